@@ -0,0 +1,846 @@
+package spline.bezier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import math.geom2d.Point2D;
+
+/**
+ * Checks the numerical paths of the library against brute force: dense
+ * scans, bisection to full precision, polylines and rebuilds from scratch.
+ * Each check prints the worst error it found next to the limit it has to
+ * stay under, and the program exits with status 1 if any check fails, so it
+ * can run as part of the build ("gradle accuracy", which "gradle check" runs
+ * too).
+ * 
+ * The curves are random but seeded, with jittered inner control points so
+ * that X isn't linear in t, plus one curve whose X'(t) reaches zero at the
+ * ends of every span.
+ */
+public class AccuracyChecks {
+
+    private final static int    SPAN_COUNT = 200;
+    private final static int    SCAN       = 1000;
+
+    // The step in X of the scans that look for crossings
+    private final static double SCAN_STEP  = 0.01;
+
+    private final static Random RAND       = new Random(42);
+
+    private static int          failures;
+
+    public static void main(String[] args) throws IOException {
+        String[] names = { "jittered", "nearly linear in t", "vertical at knots" };
+        List<Bezier> curves = new ArrayList<Bezier>();
+        curves.add(curve(0.8, 50));
+        curves.add(curve(0.2, 1));
+        curves.add(flatCurve(25));
+
+        for (int c = 0; c < curves.size(); c++) {
+            Bezier bezier = curves.get(c);
+            System.out.println(names[c] + " curve");
+            checkCoefficients(bezier);
+            checkInversion(bezier);
+            checkExtrema(bezier);
+            checkLookupTable(bezier);
+            checkXAtY(bezier);
+            checkVelocityThreshold(bezier);
+            checkCrossings(bezier);
+            checkArcLength(bezier);
+            checkResultCache(bezier);
+            checkMappedCurve(bezier);
+            checkBatch(bezier);
+        }
+        System.out.println("other");
+        checkFlatStarts();
+        checkInversion(midFlatCurve(25));
+        checkSampling();
+        checkProfilePlayer(curves.get(0));
+        checkSimplifier(curves.get(0));
+        checkMoves();
+        checkMultiCurve();
+
+        System.out.println(failures == 0 ? "all checks passed" : failures + " checks failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * Prints a result row and counts it if the error is over the limit
+     */
+    private static void check(String name, double error, double limit) {
+        boolean ok = error <= limit;
+        if (!ok)
+            failures++;
+        System.out.println(String.format("  %-36s %12.3g %12.3g  %s", name, error, limit, ok ? "ok" : "FAIL"));
+    }
+
+    /**
+     * @return
+     *         A curve whose inner control points are moved up to half of
+     *         jitter off their even spacing in X
+     */
+    private static Bezier curve(double jitter, double amplitude) {
+        int ptCount = SPAN_COUNT * 3 + 1;
+        double[] xs = new double[ptCount];
+        double[] ys = new double[ptCount];
+        double phase = RAND.nextDouble() * Math.PI;
+        for (int i = 0; i < ptCount; i++) {
+            xs[i] = i % 3 == 0 ? i : i + (RAND.nextDouble() - 0.5) * jitter;
+            ys[i] = amplitude * (Math.sin(i * 0.07 + phase) + RAND.nextGaussian() * 0.1);
+        }
+        return Bezier.fromArrays(xs, ys);
+    }
+
+    /**
+     * @return
+     *         A curve with each span's inner points on top of its end points,
+     *         giving X'(t) = 18t(1 - t), which is zero at both ends. Y goes
+     *         as the square root of X near each end, which takes a fine
+     *         lookup table grid, so this curve is kept short.
+     */
+    private static Bezier flatCurve(int spans) {
+        int ptCount = spans * 3 + 1;
+        double[] xs = new double[ptCount];
+        double[] ys = new double[ptCount];
+        for (int i = 0; i < ptCount; i++) {
+            xs[i] = i % 3 == 0 ? i : i % 3 == 1 ? i - 1 : i + 1;
+            ys[i] = Math.sin(i * 0.1) * 50;
+        }
+        return Bezier.fromArrays(xs, ys);
+    }
+
+    /**
+     * @return
+     *         A curve with each span's inner points moved to the far ends of
+     *         the span, giving X'(t) = 9(1 - 2t)^2, which is zero mid-span.
+     *         X is still monotone, but the control points go backwards in X,
+     *         which the validating setters refuse, so they're set directly.
+     */
+    private static Bezier midFlatCurve(int spans) {
+        int ptCount = spans * 3 + 1;
+        List<Point2D> pts = new ArrayList<Point2D>(ptCount);
+        for (int i = 0; i < ptCount; i++) {
+            double x = i % 3 == 0 ? i : i % 3 == 1 ? i + 2 : i - 2;
+            pts.add(new Point2D(x, Math.sin(i * 0.1) * 50));
+        }
+        return new Bezier(pts);
+    }
+
+    private static int spanCount(Bezier bezier) {
+        return bezier.getSpans().size();
+    }
+
+    /**
+     * @return
+     *         A scale for absolute errors in Y, so limits can be relative
+     */
+    private static double scaleY(Bezier bezier) {
+        double ret = 1;
+        for (Bezier.Span span : bezier.getSpans()) {
+            ret = Math.max(ret, Math.max(Math.abs(span.getMinY()), Math.abs(span.getMaxY())));
+        }
+        return ret;
+    }
+
+    private static double bernstein(Bezier.Span span, double t, boolean isX) {
+        return bernstein(span, t, isX, 0);
+    }
+
+    /**
+     * @param order
+     *            0 for the point, 1 or 2 for a derivative
+     * @return
+     *         The point or derivative at t on a span, by de Casteljau on its
+     *         control points (or their differences) rather than by its power
+     *         basis coefficients
+     */
+    private static double bernstein(Bezier.Span span, double t, boolean isX, int order) {
+        double[] p = new double[4];
+        for (int k = 0; k < 4; k++) {
+            Point2D pt = span.getCtrlPt(k);
+            p[k] = isX ? pt.x() : pt.y();
+        }
+        int degree = 3;
+        for (int o = 0; o < order; o++) {
+            for (int k = 0; k < degree; k++) {
+                p[k] = (p[k + 1] - p[k]) * degree;
+            }
+            degree--;
+        }
+        for (int level = degree; level > 0; level--) {
+            for (int k = 0; k < level; k++) {
+                p[k] = p[k] + (p[k + 1] - p[k]) * t;
+            }
+        }
+        return p[0];
+    }
+
+    /**
+     * @return
+     *         The t at which a span reaches x, bisected until the bracket
+     *         can't shrink any further
+     */
+    private static double bisect(Bezier.Span span, double x) {
+        double lo = 0;
+        double hi = 1;
+        while (true) {
+            double mid = (lo + hi) * 0.5;
+            if (mid <= lo || mid >= hi)
+                return mid;
+            if (bernstein(span, mid, true) < x)
+                lo = mid;
+            else
+                hi = mid;
+        }
+    }
+
+    /**
+     * @return
+     *         The curve's exact Y at x, by bisection on the control points
+     */
+    private static double exactY(Bezier bezier, double x) {
+        int index = bezier.spanIndexContainingX(x);
+        Bezier.Span span = bezier.getSpan(index);
+        return bernstein(span, bisect(span, x), false);
+    }
+
+    /**
+     * Compares the power basis evaluation of each span and its derivatives
+     * with the Bernstein form of its control points, which would catch a
+     * coefficient mixed up with another
+     */
+    private static void checkCoefficients(Bezier bezier) {
+        String[] names = { "position", "first derivative", "second derivative" };
+        for (int order = 0; order < 3; order++) {
+            double errorX = 0;
+            double errorY = 0;
+            for (Bezier.Span span : bezier.getSpans()) {
+                for (int k = 0; k <= 64; k++) {
+                    double t = k / 64.0;
+                    errorX = Math.max(errorX, Math.abs(power(span, t, true, order) - bernstein(span, t, true, order)));
+                    errorY = Math.max(errorY,
+                            Math.abs(power(span, t, false, order) - bernstein(span, t, false, order)));
+                }
+            }
+            check(names[order] + " X vs Bernstein", errorX, 1e-12 * bezier.getStopX());
+            check(names[order] + " Y vs Bernstein", errorY, 1e-12 * scaleY(bezier));
+        }
+    }
+
+    private static double power(Bezier.Span span, double t, boolean isX, int order) {
+        if (order == 0)
+            return span.solveCubic(t, isX);
+        else if (order == 1)
+            return span.solveCubicPrime(t, isX);
+        else
+            return span.solveCubicDoublePrime(t, isX);
+    }
+
+    /**
+     * Compares both X to t inversions with bisection. The error is measured
+     * in Y, since t itself is ill conditioned where X'(t) is near zero.
+     */
+    private static void checkInversion(Bezier bezier) {
+        double scale = scaleY(bezier);
+        Bezier.Inversion saved = bezier.getInversion();
+        for (Bezier.Inversion inversion : Bezier.Inversion.values()) {
+            bezier.setInversion(inversion);
+            double error = 0;
+            for (Bezier.Span span : bezier.getSpans()) {
+                for (int k = 0; k < 20; k++) {
+                    double x = span.getStartX() + RAND.nextDouble() * span.getRangeX();
+                    double t = span.tOfX(x);
+                    double exact = bernstein(span, bisect(span, x), false);
+                    error = Math.max(error, Math.abs(span.solveCubic(t, false) - exact));
+                }
+            }
+            check("tOfX " + inversion + " vs bisection", error, 1e-6 * scale);
+        }
+        bezier.setInversion(saved);
+    }
+
+    private static void checkExtrema(Bezier bezier) {
+        double under = 0;
+        double over = 0;
+        for (Bezier.Span span : bezier.getSpans()) {
+            double lo = Double.MAX_VALUE;
+            double hi = -Double.MAX_VALUE;
+            for (int k = 0; k <= SCAN; k++) {
+                double y = bernstein(span, (double) k / SCAN, false);
+                lo = Math.min(lo, y);
+                hi = Math.max(hi, y);
+            }
+
+            // The scan can't go past the true extrema, and should come
+            // within its own resolution of them
+            under = Math.max(under, Math.max(span.getMinY() - lo, hi - span.getMaxY()));
+            over = Math.max(over, Math.max(lo - span.getMinY(), span.getMaxY() - hi));
+        }
+        double scale = scaleY(bezier);
+        check("extrema contain dense scan", under, 1e-12 * scale);
+        check("extrema reached by dense scan", over, 1e-5 * scale);
+    }
+
+    private static void checkLookupTable(Bezier bezier) {
+        double maxError = 1e-4 * scaleY(bezier);
+        CompiledCurve exact = bezier.getCompiledCurve();
+        for (LookupTable.Interpolation mode : LookupTable.Interpolation.values()) {
+            bezier.enableLookupTable(maxError, mode);
+            double error = 0;
+            int n = spanCount(bezier) * 100;
+            for (int k = 0; k <= n; k++) {
+                double x = bezier.getStartX() + (bezier.getStopX() - bezier.getStartX()) * k / n;
+                error = Math.max(error, Math.abs(bezier.positionAtX(x) - exact.positionAtX(x)));
+            }
+            check("lookup table " + mode + " vs exact", error, maxError);
+            bezier.disableLookupTable();
+        }
+
+        // Building the table isn't a user query, so it mustn't be counted
+        Bezier metered = new Bezier(bezier.getCtrlPts());
+        metered.enableMetrics();
+        metered.enableLookupTable(maxError, LookupTable.Interpolation.CUBIC_HERMITE);
+        metered.positionAtX(metered.getStartX());
+        check("lookup table build, solves counted", metered.getMetrics().getSolves(), 0);
+    }
+
+    /**
+     * @return
+     *         The first X in [from, to] at which a scan of f finds it at or
+     *         above level, bisected down to the scan's rounding, or NaN. The
+     *         scan steps through each span separately so that it lands on
+     *         every knot, where velocity can spike to infinity.
+     */
+    private static double firstAtOrAbove(Bezier bezier, Scan f, double level, double from, double to) {
+        if (f.at(from) >= level)
+            return from;
+        double prev = from;
+        for (Bezier.Span span : bezier.getSpans()) {
+            double a = Math.max(from, span.getStartX());
+            double b = Math.min(to, span.getStopX());
+            if (b <= a)
+                continue;
+            int n = (int) Math.ceil((b - a) / SCAN_STEP);
+            for (int k = 1; k <= n; k++) {
+                double x = k == n ? b : a + (b - a) * k / n;
+                if (f.at(x) >= level) {
+                    double lo = prev;
+                    double hi = x;
+                    for (int i = 0; i < 60; i++) {
+                        double mid = (lo + hi) * 0.5;
+                        if (f.at(mid) >= level)
+                            hi = mid;
+                        else
+                            lo = mid;
+                    }
+                    return hi;
+                }
+                prev = x;
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * A function of X to scan
+     */
+    private interface Scan {
+        double at(double x);
+    }
+
+    /**
+     * xAtY must land on y, and no earlier X may reach it
+     */
+    private static void checkXAtY(final Bezier bezier) {
+        double miss = 0;
+        double early = 0;
+        for (int k = 0; k < 20; k++) {
+            Bezier.Span span = bezier.getSpan(RAND.nextInt(spanCount(bezier)));
+            final double y = span.getMinY() + RAND.nextDouble() * (span.getMaxY() - span.getMinY());
+            double x = bezier.xAtY(y);
+            miss = Math.max(miss, Math.abs(bezier.positionAtX(x) - y));
+
+            // A scan from the start must not find the curve crossing y
+            // before x, on either side
+            final double sign = Math.signum(bezier.positionAtX(bezier.getStartX()) - y);
+            double first = firstAtOrAbove(bezier, new Scan() {
+                public double at(double at) {
+                    return -sign * (exactY(bezier, at) - y);
+                }
+            }, 0, bezier.getStartX(), bezier.getStopX());
+            if (first < x)
+                early = Math.max(early, x - first);
+        }
+        check("xAtY lands on y", miss, 1e-6 * scaleY(bezier));
+        check("xAtY vs scan for earlier X", early, 1e-6);
+    }
+
+    private static void checkVelocityThreshold(Bezier bezier) {
+        double worst = 0;
+        for (int k = 0; k < 20; k++) {
+            double fromX = bezier.getStartX() + RAND.nextDouble() * (bezier.getStopX() - bezier.getStartX()) * 0.5;
+            double v = bezier.velocityAtX(fromX + RAND.nextDouble() * 40);
+            worst = Math.max(worst, velocityThresholdError(bezier, v, fromX));
+        }
+        check("firstXWhereVelocityExceeds vs scan", worst, 1e-6);
+    }
+
+    /**
+     * Velocity thresholds met exactly where a span starts flat, at the start
+     * of the curve and just after a knot, where the velocity only exceeds v
+     * once past that point
+     */
+    private static void checkFlatStarts() {
+        Bezier start = Bezier.fromArrays(new double[] { 0, 1, 2, 3 }, new double[] { 0, 0, 1, 3 });
+        Bezier knot = Bezier.fromArrays(new double[] { 0, 1, 2, 3, 4, 5, 6 }, new double[] { 3, 2, 1, 0, 0, 1, 3 });
+        double worst = 0;
+        worst = Math.max(worst, velocityThresholdError(start, 0, 0));
+        worst = Math.max(worst, velocityThresholdError(knot, 0, 0));
+        worst = Math.max(worst, velocityThresholdError(knot, 0, 3));
+        check("velocity threshold at flat starts", worst, 1e-6);
+    }
+
+    /**
+     * @return
+     *         How far firstXWhereVelocityExceeds is from the first X a scan
+     *         finds above v, or infinity if only one of them finds one
+     */
+    private static double velocityThresholdError(final Bezier bezier, double v, double fromX) {
+        double x = bezier.firstXWhereVelocityExceeds(v, fromX);
+        double first = firstAtOrAbove(bezier, new Scan() {
+            public double at(double at) {
+                return bezier.velocityAtX(at);
+            }
+        }, Math.nextUp(v), fromX, bezier.getStopX());
+        if (Double.isNaN(first) != (x == Bezier.ERROR))
+            return Double.POSITIVE_INFINITY;
+        else if (Double.isNaN(first))
+            return 0;
+        else
+            return Math.abs(x - first);
+    }
+
+    /**
+     * Every crossing a scan finds must be reported, and every reported
+     * crossing must land on y
+     */
+    private static void checkCrossings(Bezier bezier) {
+        double missed = 0;
+        double off = 0;
+        for (int k = 0; k < 20; k++) {
+            double fromX = bezier.getStartX() + RAND.nextDouble() * (bezier.getStopX() - bezier.getStartX()) * 0.5;
+            double toX = Math.min(bezier.getStopX(), fromX + RAND.nextDouble() * 100);
+            Bezier.Span span = bezier.getSpan(bezier.spanIndexContainingX(fromX));
+            double y = span.getMinY() + RAND.nextDouble() * (span.getMaxY() - span.getMinY());
+            double[] crossings = bezier.crossingsOfY(y, fromX, toX);
+            for (double x : crossings) {
+                off = Math.max(off, Math.abs(exactY(bezier, x) - y));
+            }
+
+            int n = (int) Math.ceil((toX - fromX) / SCAN_STEP);
+            double prevX = fromX;
+            double prev = exactY(bezier, fromX) - y;
+            for (int i = 1; i <= n; i++) {
+                double x = i == n ? toX : fromX + (toX - fromX) * i / n;
+                double cur = exactY(bezier, x) - y;
+                if ((prev < 0) != (cur < 0)) {
+                    double nearest = Double.POSITIVE_INFINITY;
+                    for (double c : crossings) {
+                        if (c >= prevX - 1e-9 && c <= x + 1e-9)
+                            nearest = 0;
+                    }
+                    missed = Math.max(missed, nearest);
+                }
+                prevX = x;
+                prev = cur;
+            }
+        }
+        check("crossingsOfY land on y", off, 1e-6 * scaleY(bezier));
+        check("crossingsOfY missing scan crossings", missed, 0);
+    }
+
+    private static void checkArcLength(Bezier bezier) {
+        int perSpan = 2000;
+        double polyline = 0;
+        double arcAtX = 0;
+        double prevX = bernstein(bezier.getSpan(0), 0, true);
+        double prevY = bernstein(bezier.getSpan(0), 0, false);
+        for (int s = 0; s < spanCount(bezier); s++) {
+            Bezier.Span span = bezier.getSpan(s);
+            for (int k = 1; k <= perSpan; k++) {
+                double t = (double) k / perSpan;
+                double x = bernstein(span, t, true);
+                double y = bernstein(span, t, false);
+                polyline += Math.hypot(x - prevX, y - prevY);
+                prevX = x;
+                prevY = y;
+            }
+            arcAtX = Math.max(arcAtX, Math.abs(bezier.arcLengthAtX(span.getStopX()) - polyline));
+        }
+
+        // The polyline is short by about L h^2 / 24 times the curvature
+        // squared, which for these curves is well under 1e-6 of the length
+        double length = bezier.getArcLength();
+        check("arc length vs polyline", Math.abs(length - polyline) / length, 1e-6);
+        check("arcLengthAtX vs polyline", arcAtX / length, 1e-6);
+        check("arc length error bound", bezier.getArcLengthErrorBound() / length, 1e-8);
+
+        double roundTrip = 0;
+        for (int k = 0; k < 100; k++) {
+            double s = RAND.nextDouble() * length;
+            Point2D pt = bezier.pointAtArcLength(s);
+            roundTrip = Math.max(roundTrip, Math.abs(bezier.arcLengthAtX(pt.x()) - s));
+        }
+        check("arcLengthAtX(pointAtArcLength(s))", roundTrip / length, 1e-9);
+    }
+
+    /**
+     * Cached results have to be the same as solving, bit for bit, including
+     * after the solver settings or the control points change
+     */
+    private static void checkResultCache(Bezier bezier) {
+        Bezier plain = new Bezier(bezier.getCtrlPts());
+        Bezier cached = new Bezier(bezier.getCtrlPts());
+        plain.setInversion(bezier.getInversion());
+        cached.setInversion(bezier.getInversion());
+        cached.enableResultCache(256);
+        double[] xs = new double[64];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = bezier.getStartX() + RAND.nextDouble() * (bezier.getStopX() - bezier.getStartX());
+        }
+        int mismatches = 0;
+        for (int round = 0; round < 3; round++) {
+            if (round == 1) {
+                plain.setSolverTolerance(1e-3);
+                cached.setSolverTolerance(1e-3);
+            }
+            else if (round == 2) {
+                int index = 3 * plain.spanIndexContainingX(xs[0]) + 1;
+                Point2D pt = plain.getCtrlPts().get(index);
+                plain.moveCtrlPt(index, pt.x(), pt.y() + 1);
+                cached.moveCtrlPt(index, pt.x(), pt.y() + 1);
+            }
+            for (int i = 0; i < 1000; i++) {
+                double x = xs[RAND.nextInt(xs.length)];
+                if (!same(cached.positionAtX(x), plain.positionAtX(x))
+                        || !same(cached.velocityAtX(x), plain.velocityAtX(x))
+                        || !same(cached.accelAtX(x), plain.accelAtX(x)))
+                    mismatches++;
+            }
+        }
+        check("result cache vs uncached", mismatches, 0);
+
+        // A snapshot taken before a setting changes has to keep answering as
+        // it did, cached or not, even after the new version fills the cache
+        mismatches = 0;
+        for (Bezier curve : new Bezier[] { plain, cached }) {
+            CompiledCurve snapshot = curve.getCompiledCurve();
+            double[] before = new double[xs.length];
+            for (int i = 0; i < xs.length; i++) {
+                before[i] = snapshot.positionAtX(xs[i]);
+            }
+            curve.setSolverTolerance(0.1);
+            curve.setInversion(Bezier.Inversion.CLOSED_FORM);
+            for (int i = 0; i < xs.length; i++) {
+                curve.positionAtX(xs[i]);
+                if (!same(snapshot.positionAtX(xs[i]), before[i]))
+                    mismatches++;
+            }
+        }
+        check("old snapshot after setting changes", mismatches, 0);
+    }
+
+    /**
+     * @return
+     *         Whether two results are the same, counting NaN as the same as
+     *         NaN and infinity as the same as infinity
+     */
+    private static boolean same(double a, double b) {
+        return Double.compare(a, b) == 0;
+    }
+
+    /**
+     * A mapped file has to answer exactly as the curve it was written from,
+     * and a file read back has to be the same curve
+     */
+    private static void checkMappedCurve(Bezier bezier) throws IOException {
+        Path path = Files.createTempFile("accuracy", ".bez");
+        try {
+            Bezier.Inversion saved = bezier.getInversion();
+            double savedTolerance = bezier.getSolverTolerance();
+            for (Bezier.Inversion inversion : Bezier.Inversion.values()) {
+                bezier.setInversion(inversion);
+
+                // A loose tolerance changes the answers, so the file has to
+                // carry it for the mapped curve to match
+                bezier.setSolverTolerance(inversion == Bezier.Inversion.NEWTON ? 1e-3 : savedTolerance);
+                BezierFile.write(bezier, path, true);
+                MappedCurve mapped = BezierFile.map(path);
+                Bezier read = BezierFile.read(path);
+                int mismatches = 0;
+                int n = spanCount(bezier) * 50;
+                for (int k = 0; k <= n; k++) {
+                    double x = bezier.getStartX() + (bezier.getStopX() - bezier.getStartX()) * k / n;
+                    if (!same(mapped.positionAtX(x), bezier.positionAtX(x))
+                            || !same(mapped.velocityAtX(x), bezier.velocityAtX(x))
+                            || !same(mapped.accelAtX(x), bezier.accelAtX(x))
+                            || !same(read.positionAtX(x), bezier.positionAtX(x)))
+                        mismatches++;
+                }
+                check("mapped and read " + inversion + " vs Bezier", mismatches, 0);
+            }
+            bezier.setInversion(saved);
+            bezier.setSolverTolerance(savedTolerance);
+
+            // Points moving backwards in X have to be refused on reading
+            BezierFile.write(bezier, path, false);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ByteBuffer x = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                x.putDouble(0, bezier.getStopX() + 1);
+                channel.write(x, BezierFile.HEADER_BYTES + 16);
+            }
+            int accepted = 0;
+            try {
+                BezierFile.read(path);
+                accepted++;
+            }
+            catch (IOException e) {
+            }
+            check("read file with bad points, accepted", accepted, 0);
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    private static void checkBatch(Bezier bezier) {
+        int n = spanCount(bezier) * 50;
+        double[] xs = new double[n];
+        for (int k = 0; k < n; k++) {
+            xs[k] = bezier.getStartX() - 1 + (bezier.getStopX() - bezier.getStartX() + 2) * k / (n - 1);
+        }
+        double[] positions = new double[n];
+        bezier.evaluateAtX(xs, positions, null, null);
+        double error = 0;
+        for (int k = 0; k < n; k++) {
+            error = Math.max(error, Math.abs(positions[k] - bezier.positionAtX(xs[k])));
+        }
+        check("evaluateAtX vs positionAtX", error, 1e-9 * scaleY(bezier));
+
+        // Sorted but sparse, so consecutive X values skip several spans
+        int sparse = Math.max(3, spanCount(bezier) / 5);
+        double[] jumps = new double[sparse];
+        for (int k = 0; k < sparse; k++) {
+            jumps[k] = bezier.getStartX() + (bezier.getStopX() - bezier.getStartX()) * k / (sparse - 1);
+        }
+        double[] jumpPositions = new double[sparse];
+        bezier.evaluateAtX(jumps, jumpPositions, null, null);
+        error = 0;
+        for (int k = 0; k < sparse; k++) {
+            error = Math.max(error, Math.abs(jumpPositions[k] - bezier.positionAtX(jumps[k])));
+        }
+        check("evaluateAtX vs positionAtX, sparse", error, 1e-9 * scaleY(bezier));
+
+        // With the lookup table on, both go through the table
+        double[] velocities = new double[n];
+        double[] accels = new double[n];
+        bezier.enableLookupTable(1e-4 * scaleY(bezier), LookupTable.Interpolation.CUBIC_HERMITE);
+        bezier.evaluateAtX(xs, positions, velocities, accels);
+        int mismatches = 0;
+        for (int k = 0; k < n; k++) {
+            if (!same(positions[k], bezier.positionAtX(xs[k])) || !same(velocities[k], bezier.velocityAtX(xs[k]))
+                    || !same(accels[k], bezier.accelAtX(xs[k])))
+                mismatches++;
+        }
+        bezier.disableLookupTable();
+        check("evaluateAtX vs positionAtX, table", mismatches, 0);
+    }
+
+    /**
+     * @return
+     *         A jittered curve that starts at X = start rather than 0
+     */
+    private static Bezier shiftedCurve(double start) {
+        Bezier ret = curve(0.8, 50);
+        List<Point2D> pts = ret.getCtrlPts();
+        double[] xs = new double[pts.size()];
+        double[] ys = new double[pts.size()];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = pts.get(i).x() + start;
+            ys[i] = pts.get(i).y();
+        }
+        return Bezier.fromArrays(xs, ys);
+    }
+
+    /**
+     * Evenly spaced samples have to run from the start of the curve to its
+     * end, wherever it starts, and the parallel paths and streams have to
+     * match the sequential buffers
+     */
+    private static void checkSampling() {
+        Bezier bezier = shiftedCurve(12.5);
+        int points = 997;
+        double[] xs = new double[points + 1];
+        double[] ys = new double[points + 1];
+        bezier.sampleCurve(points, xs, ys);
+        check("sampleCurve ends vs curve ends",
+                Math.max(Math.abs(xs[0] - bezier.getStartX()), Math.abs(xs[points] - bezier.getStopX())), 0);
+        double error = 0;
+        for (int i = 0; i <= points; i++) {
+            error = Math.max(error, Math.abs(ys[i] - bezier.positionAtX(xs[i])));
+        }
+        check("sampleCurve vs positionAtX", error, 1e-9 * scaleY(bezier));
+
+        double[] parallelXs = new double[points + 1];
+        double[] parallelYs = new double[points + 1];
+        bezier.sampleCurveParallel(points, parallelXs, parallelYs);
+        int mismatches = 0;
+        for (int i = 0; i <= points; i++) {
+            if (!same(parallelXs[i], xs[i]) || !same(parallelYs[i], ys[i]))
+                mismatches++;
+        }
+        check("sampleCurveParallel vs sampleCurve", mismatches, 0);
+
+        final double[] pointXs = new double[points + 1];
+        final double[] pointYs = new double[points + 1];
+        bezier.forEachCurvePoint(points, new SampleConsumer() {
+            int i;
+
+            public void accept(double x, double y) {
+                pointXs[i] = x;
+                pointYs[i++] = y;
+            }
+        });
+        double[] streamYs = bezier.curveStream(points, false).toArray();
+        double[] parallelStreamYs = bezier.curveStream(points, true).toArray();
+        mismatches = 0;
+        for (int i = 0; i <= points; i++) {
+            if (!same(pointXs[i], xs[i]) || !same(pointYs[i], ys[i]) || !same(streamYs[i], ys[i])
+                    || !same(parallelStreamYs[i], ys[i]))
+                mismatches++;
+        }
+        check("curve points, streams vs sampleCurve", mismatches, 0);
+    }
+
+    private static void checkProfilePlayer(Bezier bezier) {
+        double maxError = 1e-6 * scaleY(bezier);
+        ProfilePlayer player = new ProfilePlayer(bezier, 0.01, maxError);
+        ProfilePlayer.Report report = player.verify();
+        check("profile player vs exact", report.getMaxPositionError(), maxError);
+
+        // Curves whose length isn't a whole number of periods, where the
+        // last tick used to round past the end of the curve. The last tick
+        // has to land on the end.
+        double[][] cases = { { 0.7, 0.01 }, { 2.3, 0.001 }, { 7.1, 0.01 } };
+        double worst = 0;
+        double miss = 0;
+        for (double[] c : cases) {
+            double stop = c[0];
+            Bezier curve = Bezier.fromArrays(new double[] { 0, stop / 3, stop * 2 / 3, stop },
+                    new double[] { 0, 1, -1, 2 });
+            player = new ProfilePlayer(curve, c[1], 1e-9);
+            worst = Math.max(worst, player.verify().getMaxPositionError());
+            player.seek(player.getTickCount() - 1);
+            miss = Math.max(miss, Math.abs(player.getX() - stop));
+        }
+        check("profile player, partial last period", worst, 1e-9);
+        check("profile player last tick vs stopX", miss, 0);
+    }
+
+    /**
+     * The simplifier's reported bound has to cover a dense comparison and
+     * stay within the deviation asked for
+     */
+    private static void checkSimplifier(Bezier bezier) {
+        double maxDeviation = 1e-2 * scaleY(bezier);
+        CurveSimplifier.Report report = CurveSimplifier.simplify(bezier, maxDeviation);
+        Bezier simplified = report.getBezier();
+        double measured = 0;
+        int n = spanCount(bezier) * 300;
+        for (int k = 0; k <= n; k++) {
+            double x = bezier.getStartX() + (bezier.getStopX() - bezier.getStartX()) * k / n;
+            measured = Math.max(measured, Math.abs(simplified.positionAtX(x) - bezier.positionAtX(x)));
+        }
+        check("simplifier bound vs maxDeviation", report.getMaxError(), maxDeviation);
+        check("simplifier dense error vs bound", measured, report.getMaxError() * (1 + 1e-9));
+    }
+
+    /**
+     * Moving control points replaces spans in place. The result has to be
+     * the same as building the moved curve from scratch, across more than
+     * one chunk of spans.
+     */
+    private static void checkMoves() {
+        int spans = 3000;
+        double[] xs = new double[spans * 3 + 1];
+        double[] ys = new double[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = i;
+            ys[i] = Math.sin(i * 0.05) * 10;
+        }
+        Bezier moved = Bezier.fromArrays(xs, ys);
+        for (int k = 0; k < 2000; k++) {
+            int index = 1 + RAND.nextInt(xs.length - 2);
+            double lo = xs[index - 1];
+            double hi = xs[index + 1];
+            xs[index] = lo + (hi - lo) * (0.05 + 0.9 * RAND.nextDouble());
+            ys[index] += RAND.nextGaussian();
+            moved.moveCtrlPt(index, xs[index], ys[index]);
+        }
+        Bezier rebuilt = Bezier.fromArrays(xs, ys);
+        double error = 0;
+        for (int k = 0; k <= spans * 20; k++) {
+            double x = spans * 3.0 * k / (spans * 20);
+            error = Math.max(error, Math.abs(moved.positionAtX(x) - rebuilt.positionAtX(x)));
+        }
+        check("moveCtrlPt vs rebuild", error, 0);
+    }
+
+    /**
+     * The multi-curve evaluator, with and without the Vector API, has to
+     * agree with evaluating each curve on its own, with each curve's own
+     * inversion settings. The closed form has no tolerance, so those curves
+     * have to match exactly.
+     */
+    private static void checkMultiCurve() {
+        List<Bezier> curves = new ArrayList<Bezier>();
+        for (int c = 0; c < 21; c++) {
+            Bezier curve = curve(0.8, 10);
+            if (c % 3 == 1)
+                curve.setInversion(Bezier.Inversion.CLOSED_FORM);
+            else if (c % 3 == 2)
+                curve.setSolverTolerance(1e-12);
+            curves.add(curve);
+        }
+        MultiCurveEvaluator vector = new MultiCurveEvaluator(curves);
+        MultiCurveEvaluator scalar = new MultiCurveEvaluator(curves);
+        scalar.setVectorized(false);
+        double[] vectorPositions = new double[curves.size()];
+        double[] scalarPositions = new double[curves.size()];
+        double error = 0;
+        double mismatch = 0;
+        int closedFormMismatches = 0;
+        for (int k = 0; k < 4000; k++) {
+            double x = k < 2000 ? k * 0.301 : RAND.nextDouble() * (SPAN_COUNT * 3 + 2) - 1;
+            vector.evaluate(x, vectorPositions, null, null);
+            scalar.evaluate(x, scalarPositions, null, null);
+            for (int c = 0; c < curves.size(); c++) {
+                error = Math.max(error, Math.abs(scalarPositions[c] - curves.get(c).positionAtX(x)));
+                mismatch = Math.max(mismatch, Math.abs(vectorPositions[c] - scalarPositions[c]));
+                if (c % 3 == 1 && !same(scalarPositions[c], curves.get(c).positionAtX(x)))
+                    closedFormMismatches++;
+            }
+        }
+        check("multi-curve vs positionAtX", error, 1e-9 * 10);
+        check("multi-curve vector vs scalar", mismatch, 0);
+        check("multi-curve closed form, exact", closedFormMismatches, 0);
+    }
+}
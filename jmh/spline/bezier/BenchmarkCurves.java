@@ -0,0 +1,30 @@
+package spline.bezier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import math.geom2d.Point2D;
+
+/**
+ * The curve most of the benchmarks run against, so their results can be
+ * compared with each other
+ */
+final class BenchmarkCurves {
+
+    private BenchmarkCurves() {
+    }
+
+    /**
+     * @return
+     *         Control points for a curve of the given span count, spaced one
+     *         unit apart in X
+     */
+    static List<Point2D> points(int spanCount) {
+        int ptCount = spanCount * 3 + 1;
+        List<Point2D> pts = new ArrayList<Point2D>(ptCount);
+        for (int i = 0; i < ptCount; i++) {
+            pts.add(new Point2D(i, Math.sin(i * 0.1) * 50));
+        }
+        return pts;
+    }
+}
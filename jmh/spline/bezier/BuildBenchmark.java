@@ -0,0 +1,48 @@
+package spline.bezier;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import math.geom2d.Point2D;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times setCtrlPts, which rebuilds every span through initSpans
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BuildBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int                   spanCount;
+
+    private List<Point2D> pts;
+    private Bezier        bezier;
+
+    @Setup
+    public void setup() {
+        pts = BenchmarkCurves.points(spanCount);
+        bezier = new Bezier();
+    }
+
+    @Benchmark
+    public int setCtrlPts() {
+        bezier.setCtrlPts(pts);
+        return bezier.getSpans().size();
+    }
+}
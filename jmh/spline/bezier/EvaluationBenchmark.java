@@ -0,0 +1,163 @@
+package spline.bezier;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times the point queries over sampleCount X values, either swept in order
+ * or drawn at random, along with the paths built for the same queries: the
+ * batch evaluateAtX, the inverse xAtY, the result cache on a scheduler that
+ * revisits a few setpoints, and the profile player stepping through
+ * sampleCount ticks
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EvaluationBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int              spanCount;
+
+    @Param({ "1000", "100000" })
+    int              sampleCount;
+
+    private Bezier        bezier;
+    private Bezier        cached;
+    private ProfilePlayer player;
+    private double[]      sequential;
+    private double[]      random;
+    private double[]      targets;
+    private double[]      setpoints;
+    private double[]      out;
+
+    @Setup
+    public void setup() {
+        bezier = new Bezier(BenchmarkCurves.points(spanCount));
+        sequential = new double[sampleCount];
+        random = new double[sampleCount];
+        targets = new double[sampleCount];
+        out = new double[sampleCount];
+        double stopX = spanCount * 3;
+        Random rand = new Random(42);
+        for (int i = 0; i < sampleCount; i++) {
+            sequential[i] = stopX * i / sampleCount;
+            random[i] = stopX * rand.nextDouble();
+        }
+        for (int i = 0; i < sampleCount; i++) {
+            targets[i] = 100 * rand.nextDouble() - 50;
+        }
+
+        cached = new Bezier(BenchmarkCurves.points(spanCount));
+        cached.enableResultCache(256);
+        setpoints = new double[64];
+        for (int i = 0; i < setpoints.length; i++) {
+            setpoints[i] = stopX * rand.nextDouble();
+        }
+
+        player = new ProfilePlayer(bezier, stopX / sampleCount, 1e-6);
+    }
+
+    @Benchmark
+    public double positionAtXSequential() {
+        double ret = 0;
+        for (double x : sequential) {
+            ret += bezier.positionAtX(x);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public double positionAtXRandom() {
+        double ret = 0;
+        for (double x : random) {
+            ret += bezier.positionAtX(x);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public double velocityAtXSequential() {
+        double ret = 0;
+        for (double x : sequential) {
+            ret += bezier.velocityAtX(x);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public double velocityAtXRandom() {
+        double ret = 0;
+        for (double x : random) {
+            ret += bezier.velocityAtX(x);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public double accelAtXSequential() {
+        double ret = 0;
+        for (double x : sequential) {
+            ret += bezier.accelAtX(x);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public double accelAtXRandom() {
+        double ret = 0;
+        for (double x : random) {
+            ret += bezier.accelAtX(x);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public double[] evaluateAtXSequential() {
+        bezier.evaluateAtX(sequential, out, null, null);
+        return out;
+    }
+
+    @Benchmark
+    public double xAtY() {
+        double ret = 0;
+        for (double y : targets) {
+            ret += bezier.xAtY(y);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public double resultCacheSetpoints() {
+        double ret = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            double x = setpoints[i & (setpoints.length - 1)];
+            ret += cached.positionAtX(x) + cached.velocityAtX(x) + cached.accelAtX(x);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    public double profilePlayer() {
+        double ret = 0;
+        player.reset();
+        while (player.next()) {
+            ret += player.getPosition();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,89 @@
+package spline.bezier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import math.geom2d.Point2D;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the speed of the Newton and closed form X to t inversions, per
+ * inversion, on curves with evenly spaced X, jittered X and a flat spot in X
+ * where X'(t) = 0 inside a span. Their accuracy is checked by AccuracyChecks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class InversionBenchmark {
+
+    private final static int SPAN_COUNT = 1000;
+    private final static int QUERIES    = 100000;
+
+    @Param({ "even", "jittered", "flat" })
+    String                   curve;
+
+    @Param({ "NEWTON", "CLOSED_FORM" })
+    Bezier.Inversion         inversion;
+
+    private Bezier           bezier;
+    private int[]            spans;
+    private double[]         xs;
+
+    @Setup
+    public void setup() {
+        Random rand = new Random(42);
+        bezier = new Bezier(points(curve, rand));
+        bezier.setInversion(inversion);
+        spans = new int[QUERIES];
+        xs = new double[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            spans[i] = rand.nextInt(SPAN_COUNT);
+            Bezier.Span span = bezier.getSpan(spans[i]);
+            xs[i] = span.getStartX() + rand.nextDouble() * span.getRangeX();
+        }
+    }
+
+    private static List<Point2D> points(String curve, Random rand) {
+        int ptCount = SPAN_COUNT * 3 + 1;
+        List<Point2D> pts = new ArrayList<Point2D>(ptCount);
+        for (int i = 0; i < ptCount; i++) {
+            double x = i;
+            if (curve.equals("jittered") && i % 3 != 0)
+                x += (rand.nextDouble() - 0.5) * 0.8;
+
+            // Moving the inner points to the far ends of the span gives
+            // X'(t) = 9(1 - 2t)^2, which is zero mid-span
+            if (curve.equals("flat") && i % 3 != 0)
+                x = i - i % 3 + (i % 3 == 1 ? 3 : 0);
+            pts.add(new Point2D(x, Math.sin(i * 0.1) * 50));
+        }
+        return pts;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public double tOfX() {
+        double ret = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            ret += bezier.getSpan(spans[i]).tOfX(xs[i]);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,54 @@
+package spline.bezier;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times positionAtX from every available thread at once, all in the same
+ * span, with metrics on and off. With metrics on, every query increments the
+ * same span counter, which is the worst case for contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@Threads(Threads.MAX)
+public class MetricsBenchmark {
+
+    @Param({ "false", "true" })
+    boolean        metrics;
+
+    private Bezier bezier;
+
+    @Setup
+    public void setup() {
+        bezier = new Bezier(BenchmarkCurves.points(100));
+        if (metrics)
+            bezier.enableMetrics();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        double x = 150;
+    }
+
+    @Benchmark
+    public double positionAtXHotSpan(Cursor cursor) {
+        cursor.x = cursor.x < 151 ? cursor.x + 0.01 : 150.01;
+        return bezier.positionAtX(cursor.x);
+    }
+}
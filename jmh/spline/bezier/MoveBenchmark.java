@@ -0,0 +1,57 @@
+package spline.bezier;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import math.geom2d.Point2D;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times moving one inner control point up and down by a small amount, which
+ * publishes a new version of the curve without a full rebuild
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MoveBenchmark {
+
+    @Param({ "100", "10000", "100000" })
+    int            spanCount;
+
+    private Bezier bezier;
+    private int    index;
+    private double x;
+    private double y;
+    private double step;
+
+    @Setup
+    public void setup() {
+        List<Point2D> pts = BenchmarkCurves.points(spanCount);
+        bezier = new Bezier(pts);
+        index = spanCount / 2 * 3 + 1;
+        x = pts.get(index).x();
+        y = pts.get(index).y();
+        step = 0.25;
+    }
+
+    @Benchmark
+    public long moveCtrlPt() {
+        step = -step;
+        bezier.moveCtrlPt(index, x, y + step);
+        return bezier.getVersion();
+    }
+}
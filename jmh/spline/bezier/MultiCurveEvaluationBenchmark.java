@@ -0,0 +1,107 @@
+package spline.bezier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times one control tick of many curves: every curve evaluated at the same X,
+ * with X stepping forward a little each op. The MultiCurveEvaluator is run
+ * with and without the Vector API solve, against a loop of positionAtX calls.
+ * The vectorized runs need the jdk.incubator.vector module, which the jmh
+ * task adds.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MultiCurveEvaluationBenchmark {
+
+    private final static int    SPAN_COUNT = 100;
+    private final static double STEP       = 0.0137;
+
+    @Param({ "8", "64", "512" })
+    int                         curveCount;
+
+    @Param({ "true", "false" })
+    boolean                     vectorized;
+
+    private List<Bezier>        curves;
+    private MultiCurveEvaluator evaluator;
+    private double[]            positions;
+    private double[]            velocities;
+    private double              x;
+
+    @Setup
+    public void setup() {
+        curves = new ArrayList<Bezier>(curveCount);
+        Random rand = new Random(42);
+        for (int c = 0; c < curveCount; c++) {
+            curves.add(curve(rand));
+        }
+        evaluator = new MultiCurveEvaluator(curves);
+        evaluator.setVectorized(vectorized);
+        positions = new double[curveCount];
+        velocities = new double[curveCount];
+    }
+
+    /**
+     * @return
+     *         A curve whose inner control points are jittered in X, so the X
+     *         to t inversion takes several iterations
+     */
+    private static Bezier curve(Random rand) {
+        int ptCount = SPAN_COUNT * 3 + 1;
+        double[] xs = new double[ptCount];
+        double[] ys = new double[ptCount];
+        double phase = rand.nextDouble() * Math.PI;
+        for (int i = 0; i < ptCount; i++) {
+            xs[i] = i % 3 == 0 ? i : i + (rand.nextDouble() - 0.5) * 0.8;
+            ys[i] = Math.sin(i * 0.1 + phase) * 50;
+        }
+        return Bezier.fromArrays(xs, ys);
+    }
+
+    private double nextX() {
+        x += STEP;
+        if (x > SPAN_COUNT * 3)
+            x -= SPAN_COUNT * 3;
+        return x;
+    }
+
+    @Benchmark
+    public double[] positionAtXLoop() {
+        double at = nextX();
+        for (int c = 0; c < curveCount; c++) {
+            positions[c] = curves.get(c).positionAtX(at);
+        }
+        return positions;
+    }
+
+    @Benchmark
+    public double[] multiCurvePosition() {
+        evaluator.evaluate(nextX(), positions, null, null);
+        return positions;
+    }
+
+    @Benchmark
+    public double[] multiCurvePositionVelocity() {
+        evaluator.evaluate(nextX(), positions, velocities, null);
+        return velocities;
+    }
+}
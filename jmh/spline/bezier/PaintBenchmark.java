@@ -0,0 +1,64 @@
+package spline.bezier;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times BezierUI rendering the curve to an offscreen image, alone and after a
+ * model change
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int                spanCount;
+
+    private BezierUI   ui;
+    private Graphics2D g;
+
+    @Setup
+    public void setup() {
+        Bezier bezier = new Bezier();
+        ui = new BezierUI();
+        ui.setSize(800, 600);
+        ui.setMaxX(spanCount * 3);
+        bezier.registerObserver(ui);
+        bezier.setCtrlPts(BenchmarkCurves.points(spanCount));
+        g = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public void paintComponent() {
+        ui.paintComponent(g);
+    }
+
+    @Benchmark
+    public void paintComponentAfterModelChange() {
+        ui.update();
+        ui.paintComponent(g);
+    }
+}
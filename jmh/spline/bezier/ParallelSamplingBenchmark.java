@@ -0,0 +1,66 @@
+package spline.bezier;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times sampling a long curve into primitive buffers, sequentially with
+ * sampleCurve when threads is 0 and otherwise with sampleCurveParallel on a
+ * pool of that many threads. That the two give the same samples is checked
+ * by AccuracyChecks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParallelSamplingBenchmark {
+
+    private final static int SPAN_COUNT = 10000;
+    private final static int POINTS     = 10000000;
+
+    @Param({ "0", "1", "2", "4", "8" })
+    int                      threads;
+
+    private Bezier           bezier;
+    private ForkJoinPool     pool;
+    private double[]         xs;
+    private double[]         ys;
+
+    @Setup
+    public void setup() {
+        bezier = new Bezier(BenchmarkCurves.points(SPAN_COUNT));
+        pool = threads > 0 ? new ForkJoinPool(threads) : null;
+        xs = new double[POINTS + 1];
+        ys = new double[POINTS + 1];
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null)
+            pool.shutdown();
+    }
+
+    @Benchmark
+    public double[] sample() {
+        if (pool == null)
+            bezier.sampleCurve(POINTS, xs, ys);
+        else
+            bezier.sampleCurveParallel(POINTS, xs, ys, pool);
+        return ys;
+    }
+}
@@ -0,0 +1,56 @@
+package spline.bezier;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times sampling the whole curve into lists of points, evenly spaced in X or
+ * along the curve
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SamplingBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int            spanCount;
+
+    @Param({ "1000", "100000" })
+    int            sampleCount;
+
+    private Bezier bezier;
+
+    @Setup
+    public void setup() {
+        bezier = new Bezier(BenchmarkCurves.points(spanCount));
+    }
+
+    @Benchmark
+    public int getCurvePoints() {
+        return bezier.getCurvePoints(sampleCount).size();
+    }
+
+    @Benchmark
+    public int getScaledCurvePoints() {
+        return bezier.getScaledCurvePoints(sampleCount).size();
+    }
+
+    @Benchmark
+    public int getArcLengthPoints() {
+        return bezier.getArcLengthPoints(sampleCount).size();
+    }
+}
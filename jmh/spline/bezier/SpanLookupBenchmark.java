@@ -0,0 +1,77 @@
+package spline.bezier;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times finding the span containing an X value, per lookup, as the span
+ * count grows. Lookup cost should stay flat for sequential queries with the
+ * cursor on, and grow only logarithmically for random ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SpanLookupBenchmark {
+
+    private final static int QUERIES = 100000;
+
+    @Param({ "3", "30", "300", "3000", "30000", "100000" })
+    int                      spanCount;
+
+    @Param({ "true", "false" })
+    boolean                  cursor;
+
+    private Bezier           bezier;
+    private double[]         sequential;
+    private double[]         random;
+
+    @Setup
+    public void setup() {
+        bezier = new Bezier(BenchmarkCurves.points(spanCount));
+        bezier.setLookupCursorEnabled(cursor);
+        double stopX = spanCount * 3;
+        sequential = new double[QUERIES];
+        random = new double[QUERIES];
+        Random rand = new Random(42);
+        for (int i = 0; i < QUERIES; i++) {
+            sequential[i] = stopX * i / QUERIES;
+            random[i] = stopX * rand.nextDouble();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public long sequential() {
+        long ret = 0;
+        for (double x : sequential) {
+            ret += bezier.spanIndexContainingX(x);
+        }
+        return ret;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public long random() {
+        long ret = 0;
+        for (double x : random) {
+            ret += bezier.spanIndexContainingX(x);
+        }
+        return ret;
+    }
+}
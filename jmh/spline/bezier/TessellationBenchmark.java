@@ -0,0 +1,46 @@
+package spline.bezier;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times tessellating the whole curve into a reused polyline
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TessellationBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    int              spanCount;
+
+    private Bezier   bezier;
+    private Polyline polyline;
+
+    @Setup
+    public void setup() {
+        bezier = new Bezier(BenchmarkCurves.points(spanCount));
+        polyline = new Polyline();
+    }
+
+    @Benchmark
+    public int tessellate() {
+        polyline.clear();
+        bezier.tessellate(0.01, false, polyline);
+        return polyline.size();
+    }
+}
@@ -0,0 +1,229 @@
+package spline.bezier;
+
+import java.util.Arrays;
+
+import math.geom2d.Point2D;
+
+/**
+ * The cumulative arc length of a curve, for finding points by distance along
+ * the curve rather than by X. Each span's length is the integral of its speed
+ * |P'(t)|, computed with 5 point Gauss-Legendre quadrature. A span is split
+ * in half until the quadrature over the halves agrees with the quadrature
+ * over the whole to within TOLERANCE. The result is a table of pieces, each
+ * with its start t and the length of the curve before it.
+ * 
+ * Finding the point at a given length binary searches the table for its
+ * piece, then solves for t within the piece with Newton's method on the
+ * integral, whose derivative is just the speed.
+ */
+class ArcLengthTable {
+
+    // Relative error accepted for each piece's length
+    final static double         TOLERANCE       = 1e-10;
+    private final static int    MAX_DEPTH       = 24;
+
+    // 5 point Gauss-Legendre nodes and weights on [-1, 1]
+    private final static double NODE_1          = 0.5384693101056831;
+    private final static double NODE_2          = 0.9061798459386640;
+    private final static double WEIGHT_0        = 0.5688888888888889;
+    private final static double WEIGHT_1        = 0.4786286704993665;
+    private final static double WEIGHT_2        = 0.2369268850561891;
+
+    private final Bezier.Span[] spans;
+
+    // Piece i starts at t = pieceStartT[i] on span pieceSpan[i], with
+    // pieceLength[i] of the curve before it. The pieces of span s are
+    // spanFirstPiece[s] to spanFirstPiece[s + 1] - 1.
+    private double[]            pieceStartT;
+    private int[]               pieceSpan;
+    private double[]            pieceLength;
+    private int                 pieceCount;
+    private final int[]         spanFirstPiece;
+    private final double        length;
+    private double              errorBound;
+
+    ArcLengthTable(Bezier.Span[] spans) {
+        this.spans = spans;
+        pieceStartT = new double[Math.max(1, spans.length * 2)];
+        pieceSpan = new int[pieceStartT.length];
+        pieceLength = new double[pieceStartT.length];
+        spanFirstPiece = new int[spans.length + 1];
+
+        double total = 0;
+        for (int s = 0; s < spans.length; s++) {
+            spanFirstPiece[s] = pieceCount;
+            total = addPieces(s, 0, 1, integrate(spans[s], 0, 1), total, 0);
+        }
+        spanFirstPiece[spans.length] = pieceCount;
+        length = total;
+    }
+
+    /**
+     * Splits [a, b] of a span until its quadrature converges, appending the
+     * pieces to the table
+     * 
+     * @return
+     *         The length of the curve up to b
+     */
+    private double addPieces(int span, double a, double b, double whole, double before, int depth) {
+        double mid = (a + b) * 0.5;
+        double left = integrate(spans[span], a, mid);
+        double right = integrate(spans[span], mid, b);
+        double halves = left + right;
+        double error = Math.abs(halves - whole);
+        if (error <= TOLERANCE * halves || depth >= MAX_DEPTH) {
+            if (pieceCount == pieceStartT.length) {
+                pieceStartT = Arrays.copyOf(pieceStartT, pieceCount * 2);
+                pieceSpan = Arrays.copyOf(pieceSpan, pieceCount * 2);
+                pieceLength = Arrays.copyOf(pieceLength, pieceCount * 2);
+            }
+            pieceStartT[pieceCount] = a;
+            pieceSpan[pieceCount] = span;
+            pieceLength[pieceCount] = before;
+            pieceCount++;
+
+            // The difference between the two estimates bounds the error of
+            // the less accurate one, so it also bounds the halves kept here
+            errorBound += error;
+            return before + halves;
+        }
+        double ret = addPieces(span, a, mid, left, before, depth + 1);
+        return addPieces(span, mid, b, right, ret, depth + 1);
+    }
+
+    private static double speed(Bezier.Span span, double t) {
+        double dx = span.solveCubicPrime(t, true);
+        double dy = span.solveCubicPrime(t, false);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * @return
+     *         The length of a span between t = a and t = b
+     */
+    private static double integrate(Bezier.Span span, double a, double b) {
+        double half = (b - a) * 0.5;
+        double mid = (a + b) * 0.5;
+        double sum = WEIGHT_0 * speed(span, mid);
+        sum += WEIGHT_1 * (speed(span, mid - half * NODE_1) + speed(span, mid + half * NODE_1));
+        sum += WEIGHT_2 * (speed(span, mid - half * NODE_2) + speed(span, mid + half * NODE_2));
+        return sum * half;
+    }
+
+    double getLength() {
+        return length;
+    }
+
+    /**
+     * @return
+     *         A bound on the error of the total length, from the quadrature
+     *         error estimates of each piece
+     */
+    double getErrorBound() {
+        return errorBound;
+    }
+
+    private double pieceStopT(int piece) {
+        return piece + 1 < pieceCount && pieceSpan[piece + 1] == pieceSpan[piece] ? pieceStartT[piece + 1] : 1;
+    }
+
+    /**
+     * @return
+     *         The last piece starting at or before s
+     */
+    private int pieceAt(double s) {
+        int lo = 0;
+        int hi = pieceCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (pieceLength[mid] <= s)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * @param s
+     *            The distance along the curve, clamped to [0, getLength()]
+     * @return
+     *         The point at that distance
+     */
+    Point2D pointAtLength(double s) {
+        if (pieceCount == 0)
+            return null;
+        s = Math.max(0, Math.min(length, s));
+        int piece = pieceAt(s);
+        return point(piece, tInPiece(piece, s));
+    }
+
+    /**
+     * Fills xs and ys with points + 1 points evenly spaced along the curve,
+     * walking forward through the table rather than searching it
+     */
+    void sample(int points, double[] xs, double[] ys) {
+        if (pieceCount == 0)
+            return;
+        int piece = 0;
+        for (int i = 0; i <= points; i++) {
+            double s = i == points ? length : length * i / points;
+            while (piece + 1 < pieceCount && pieceLength[piece + 1] <= s)
+                piece++;
+            double t = tInPiece(piece, s);
+            Bezier.Span span = spans[pieceSpan[piece]];
+            xs[i] = span.solveCubic(t, true);
+            ys[i] = span.solveCubic(t, false);
+        }
+    }
+
+    /**
+     * @return
+     *         The distance along the curve to t on the given span
+     */
+    double lengthAt(int span, double t) {
+        int lo = spanFirstPiece[span];
+        int hi = spanFirstPiece[span + 1] - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (pieceStartT[mid] <= t)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return pieceLength[lo] + integrate(spans[span], pieceStartT[lo], t);
+    }
+
+    private Point2D point(int piece, double t) {
+        Bezier.Span span = spans[pieceSpan[piece]];
+        return new Point2D(span.solveCubic(t, true), span.solveCubic(t, false));
+    }
+
+    /**
+     * Solves for the t within a piece at which the curve has covered s,
+     * taking bracketed Newton steps on the length integral
+     */
+    private double tInPiece(int piece, double s) {
+        final Bezier.Span span = spans[pieceSpan[piece]];
+        final double a = pieceStartT[piece];
+        double hi = pieceStopT(piece);
+        double target = s - pieceLength[piece];
+        if (target <= 0)
+            return a;
+        double total = integrate(span, a, hi);
+        if (target >= total)
+            return hi;
+
+        RootSolver.Function length = new RootSolver.Function() {
+            public double value(double t) {
+                return integrate(span, a, t);
+            }
+
+            public double slope(double t) {
+                return speed(span, t);
+            }
+        };
+        return RootSolver.newton(length, target, a, hi, a + (hi - a) * target / total, (hi - a) * 1e-12, true,
+                null);
+    }
+}
@@ -1,41 +1,110 @@
 package spline.bezier;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import math.geom2d.Point2D;
 import spline.mvc.Model;
 
+/**
+ * A curve made of cubic Bezier spans joined end to end. Edits are made under
+ * the curve's lock and each one publishes a new CompiledCurve, which all the
+ * evaluation methods read from, so any number of threads can evaluate the
+ * curve without locking while another edits it.
+ */
 public class Bezier extends Model {
 
-    private double           ERROR        = -1e6f;
+    /**
+     * How a span finds the t value at which it reaches a given X
+     */
+    public enum Inversion {
+        /**
+         * Bracketed Newton iteration to the solver tolerance. Usually the
+         * fastest, but the number of iterations varies with X.
+         */
+        NEWTON,
+
+        /**
+         * Solves X(t) = x directly with Cardano's formula, or its
+         * trigonometric form when the cubic has three real roots. Every
+         * query costs about the same, which suits hard real-time use.
+         */
+        CLOSED_FORM
+    }
+
+    final static double      ERROR        = -1e6f;
 
     private int              spanIdGen    = 0;
-    private List<Span>       spans        = new ArrayList<Span>();
     private List<Point2D>    ctrlPts      = new ArrayList<Point2D>();
     private int              knotCount;
     private int              spanCount;
     private final static int PTS_PER_SPAN = 4;
 
+    // Polynomial coefficients of every span packed back to back as
+    // (ax, bx, cx, dx, ay, by, cy, dy)
+    final static int         COEFFS_PER_SPAN = 8;
+
+    // Limits subdivision in tessellate, which halves the span each level
+    private final static int TESSELLATION_DEPTH = 24;
+
     private int              nextX;
     private int              nextY;
 
+    // The current version of the curve. Readers take this once per query and
+    // evaluate against it, so they never see a partly rebuilt curve.
+    private volatile CompiledCurve compiled;
+    private long             version;
+    private boolean          cursorEnabled = true;
+
+    // Convergence tolerance in t for the X to t inversion
+    private volatile double  solverTolerance = 1e-9;
+    private volatile Inversion inversion  = Inversion.NEWTON;
+
+    // Lookup table mode. The table is built lazily for each version.
+    private boolean          lutEnabled;
+    private double           lutMaxError;
+    private LookupTable.Interpolation lutMode;
+
+    // Null unless metrics have been enabled
+    private volatile BezierMetrics metrics;
+    private ResultCache      resultCache;
+
     public Bezier() {
+        publish(new SpanTable(new Span[0]));
     }
 
+    /**
+     * @return
+     *         The spans of the current version of the curve, which can't be
+     *         modified
+     */
     public List<Span> getSpans() {
-        return this.spans;
+        return compiled.spans.asList();
     }
 
-    public void setSpans(List<Span> spans) {
-        this.spans = spans;
+    public synchronized void setSpans(List<Span> spans) {
+        Span[] array = spans.toArray(new Span[spans.size()]);
+        version++;
+        publish(new SpanTable(array));
+        super.notifyObservers();
     }
 
     public Bezier(List<Point2D> ctrlPts) {
+        this();
         setCtrlPts(ctrlPts);
     }
 
-    public void setCtrlPts(List<Point2D> ctrlPts) {
+    public synchronized void setCtrlPts(List<Point2D> ctrlPts) {
         this.ctrlPts = ctrlPts;
         this.spanCount = (ctrlPts.size() - 1) / (PTS_PER_SPAN - 1);
         this.knotCount = spanCount + 1;
@@ -44,13 +113,151 @@ public class Bezier extends Model {
         initSpans();
     }
 
-    public void init(List<Point2D> ctrlPts, int knotCount) {
+    /**
+     * Replaces all of the control points at once, building every span in a
+     * single pass with one notification
+     * 
+     * @param xs
+     *            The X value of each control point
+     * @param ys
+     *            The Y value of each control point
+     * @throws IllegalArgumentException
+     *             If the points fail the checks in validateCtrlPts
+     */
+    public void setCtrlPts(double[] xs, double[] ys) {
+        if (xs.length != ys.length)
+            throw new IllegalArgumentException(xs.length + " X values but " + ys.length + " Y values");
+        List<Point2D> pts = new ArrayList<Point2D>(xs.length);
+        for (int i = 0; i < xs.length; i++) {
+            pts.add(new Point2D(xs[i], ys[i]));
+        }
+        validateCtrlPts(pts);
+        setCtrlPts(pts);
+    }
+
+    /**
+     * Replaces all of the control points at once from interleaved (x, y)
+     * pairs. The buffer is read from its position to its limit and its
+     * position isn't changed.
+     * 
+     * @param xy
+     *            The control points as x0, y0, x1, y1, ...
+     * @throws IllegalArgumentException
+     *             If the points fail the checks in validateCtrlPts
+     */
+    public void setCtrlPts(DoubleBuffer xy) {
+        int start = xy.position();
+        int values = xy.remaining();
+        if (values % 2 != 0)
+            throw new IllegalArgumentException("odd number of values in an interleaved point buffer");
+        List<Point2D> pts = new ArrayList<Point2D>(values / 2);
+        for (int i = start; i < start + values; i += 2) {
+            pts.add(new Point2D(xy.get(i), xy.get(i + 1)));
+        }
+        validateCtrlPts(pts);
+        setCtrlPts(pts);
+    }
+
+    /**
+     * Checks that a list of control points describes a usable curve. Spans
+     * share their end knots, so the points must number 3n + 1 for n spans,
+     * which also keeps the curve continuous at every knot. X may never
+     * decrease from one control point to the next, which keeps X(t)
+     * monotone within every span so that each X has a single Y.
+     * 
+     * @param pts
+     *            The control points to check
+     * @throws IllegalArgumentException
+     *             Naming the first point that fails a check
+     */
+    public static void validateCtrlPts(List<Point2D> pts) {
+        int count = pts.size();
+        if (count < PTS_PER_SPAN || (count - 1) % (PTS_PER_SPAN - 1) != 0)
+            throw new IllegalArgumentException(count + " control points don't make whole spans, expected 3n + 1");
+
+        double prevX = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            Point2D pt = pts.get(i);
+            if (Double.isNaN(pt.x()) || Double.isInfinite(pt.x()) || Double.isNaN(pt.y())
+                    || Double.isInfinite(pt.y()))
+                throw new IllegalArgumentException("control point " + i + " isn't finite");
+            if (pt.x() < prevX)
+                throw new IllegalArgumentException("control point " + i + " moves backwards in X");
+            prevX = pt.x();
+        }
+    }
+
+    /**
+     * @see #setCtrlPts(double[], double[])
+     */
+    public static Bezier fromArrays(double[] xs, double[] ys) {
+        Bezier ret = new Bezier();
+        ret.setCtrlPts(xs, ys);
+        return ret;
+    }
+
+    /**
+     * @see #setCtrlPts(DoubleBuffer)
+     */
+    public static Bezier fromBuffer(DoubleBuffer xy) {
+        Bezier ret = new Bezier();
+        ret.setCtrlPts(xy);
+        return ret;
+    }
+
+    /**
+     * Reads control points from CSV text with one "x,y" pair per line. Blank
+     * lines and lines starting with # are skipped, as is a header line
+     * before the first point. The points are streamed straight into the
+     * curve's point list without being held in any other form.
+     * 
+     * @param reader
+     *            The CSV source, which is read to the end but not closed
+     * @throws IOException
+     *             If a line can't be read or parsed
+     * @throws IllegalArgumentException
+     *             If the points fail the checks in validateCtrlPts
+     */
+    public static Bezier fromCsv(Reader reader) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        List<Point2D> pts = new ArrayList<Point2D>();
+        int lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            int comma = line.indexOf(',');
+            try {
+                if (comma < 0 || line.indexOf(',', comma + 1) >= 0)
+                    throw new NumberFormatException("expected x,y");
+                double x = Double.parseDouble(line.substring(0, comma).trim());
+                double y = Double.parseDouble(line.substring(comma + 1).trim());
+                pts.add(new Point2D(x, y));
+            }
+            catch (NumberFormatException e) {
+                // Allow a header line before the first point
+                if (pts.isEmpty() && comma >= 0 && !Character.isDigit(line.charAt(0)))
+                    continue;
+                throw new IOException("line " + lineNumber + ": can't parse \"" + line + "\"", e);
+            }
+        }
+
+        validateCtrlPts(pts);
+        Bezier ret = new Bezier();
+        ret.setCtrlPts(pts);
+        return ret;
+    }
+
+    public synchronized void init(List<Point2D> ctrlPts, int knotCount) {
         this.ctrlPts = ctrlPts;
         this.knotCount = knotCount;
         this.spanCount = knotCount - 1;
     }
 
-    public void setKnotCount(int knotCount) {
+    public synchronized void setKnotCount(int knotCount) {
         this.knotCount = knotCount;
         this.spanCount = knotCount - 1;
         nextX = 0;
@@ -67,25 +274,80 @@ public class Bezier extends Model {
         return knotCount;
     }
 
-    public void setNextX(double x) {
+    public synchronized void setNextX(double x) {
         double y = ctrlPts.get(nextX).getY();
         ctrlPts.set(nextX, new Point2D(x, y));
         nextX++;
         initSpans();
     }
 
-    public void setNextY(double y) {
+    public synchronized void setNextY(double y) {
         double x = ctrlPts.get(nextY).getX();
         ctrlPts.set(nextY, new Point2D(x, y));
         nextY++;
         initSpans();
     }
 
+    /**
+     * Moves a single control point. Only the one or two spans that share the
+     * point are recomputed, and observers are told which spans changed.
+     * 
+     * @param index
+     *            The index of the control point to move
+     * @param x
+     *            The new X value of the point
+     * @param y
+     *            The new Y value of the point
+     * @throws IllegalArgumentException
+     *             If there's no point at index, the new values aren't
+     *             finite, or x lies outside the X values of the neighboring
+     *             points
+     */
+    public synchronized void moveCtrlPt(int index, double x, double y) {
+        if (index < 0 || index >= ctrlPts.size())
+            throw new IllegalArgumentException("no control point " + index + " in " + ctrlPts.size());
+        if (Double.isNaN(x) || Double.isInfinite(x) || Double.isNaN(y) || Double.isInfinite(y))
+            throw new IllegalArgumentException("control point " + index + " isn't finite");
+        if ((index > 0 && x < ctrlPts.get(index - 1).x())
+                || (index + 1 < ctrlPts.size() && x > ctrlPts.get(index + 1).x()))
+            throw new IllegalArgumentException("control point " + index + " moves past a neighbor in X");
+        Point2D pt = new Point2D(x, y);
+        ctrlPts.set(index, pt);
+
+        // Nothing to patch until all the control points have been set
+        CompiledCurve curve = compiled;
+        if (nextX != ctrlPts.size() || nextY != ctrlPts.size() || curve.getSpanCount() != spanCount)
+            return;
+
+        // A knot is shared by the span ending and the span starting there
+        int inc = PTS_PER_SPAN - 1;
+        int first = index % inc == 0 && index > 0 ? index / inc - 1 : index / inc;
+        int last = Math.min(index / inc, spanCount - 1);
+
+        // The published table is never written to, so the new version copies
+        // only the chunks holding the replaced spans and shares the rest. The
+        // replaced spans get their own coefficients rather than writing into
+        // the packed array that older versions still read from.
+        Span[] replacements = new Span[last - first + 1];
+        for (int i = first; i <= last; i++) {
+            Point2D[] spanPts = curve.getSpan(i).ctrlPts.clone();
+            spanPts[index - i * inc] = pt;
+            replacements[i - first] = new Span(spanPts, new double[COEFFS_PER_SPAN], 0);
+        }
+
+        version++;
+        publish(curve.spans.with(first, replacements));
+
+        super.notifyObservers(first, last);
+    }
+
     private void initSpans() {
 
         // Don't initialize the spans till all the control points have been set
         if (nextX != ctrlPts.size() || nextY != ctrlPts.size())
             return;
+        BezierMetrics stats = metrics;
+        long startNanos = stats != null ? System.nanoTime() : 0;
 
         /**
          * Select starting control point for each span and create new span
@@ -97,73 +359,427 @@ public class Bezier extends Model {
                                   // new span (last point of span n should ==
                                   // first point of span n+1)
 
-        // The control points might be reinitialized at some point, so clear any
-        // existing spans
-        spans.clear();
+        // Build a complete new set of spans, leaving the published ones alone
+        // for any readers still using them
+        Span[] spans = new Span[spanCount];
+        double[] coeffs = new double[spanCount * COEFFS_PER_SPAN];
         for (int i = 0; i < spanCount; i++) {
 
-            // If this is the first span, set the previous span to null
-            Span prevSpan = i == 0 ? null : spans.get(i - 1);
-
             // Extract the proper subset of control points for this span
             Point2D[] spanPts = new Point2D[SPAN_PT_CT];
             for (int j = 0; j < SPAN_PT_CT; j++) {
                 spanPts[j] = ctrlPts.get(j + i * INC);
             }
 
-            // Create the new span and add it to the list
-            Span newSpan = new Span(spanPts, prevSpan);
-            spans.add(newSpan);
+            // Create the new span and add it to the array
+            spans[i] = new Span(spanPts, coeffs, i * COEFFS_PER_SPAN);
         }
 
+        version++;
+        publish(new SpanTable(spans));
+        if (stats != null)
+            stats.recordRebuild(spans.length, System.nanoTime() - startNanos);
+
         super.notifyObservers();
     }
 
+    /**
+     * Publishes a new version of the curve
+     */
+    private void publish(SpanTable spans) {
+        compiled = new CompiledCurve(spans, version, cursorEnabled, inversion, solverTolerance,
+                lutEnabled ? lutMode : null, lutMaxError, metrics, resultCache);
+    }
+
+    /**
+     * Republishes the current spans with the current settings
+     */
+    private void republish() {
+        publish(compiled.spans);
+    }
+
+    /**
+     * @return
+     *         The current version of the curve. It won't change, so several
+     *         queries made against it all see the same curve even while the
+     *         control points are being edited.
+     */
+    public CompiledCurve getCompiledCurve() {
+        return compiled;
+    }
+
+    /**
+     * @return
+     *         A number that increases every time the control points, the
+     *         solver tolerance or the inversion method change, which is every
+     *         time the answers to point queries might change. Comparing it
+     *         with an earlier value is a cheap way to tell whether the curve
+     *         has changed.
+     */
+    public long getVersion() {
+        return compiled.getVersion();
+    }
+
     public double positionAtX(double x) {
-        Span thisSpan = spanContainingX(x);
-        if (thisSpan != null)
-            return thisSpan.positionAtX(x);
-        else
-            return ERROR;
+        return compiled.positionAtX(x);
     }
 
     public double velocityAtX(double x) {
-        Span thisSpan = spanContainingX(x);
-        if (thisSpan != null)
-            return thisSpan.velocityAtX(x);
-        else
-            return ERROR;
+        return compiled.velocityAtX(x);
     }
 
     public double accelAtX(double x) {
-        Span thisSpan = spanContainingX(x);
-        if (thisSpan != null)
-            return thisSpan.accelAtX(x);
-        else
-            return ERROR;
+        return compiled.accelAtX(x);
     }
 
-    private Span spanContainingX(double x) {
-        for (int i = 0; i < spans.size(); i++) {
-            if (spans.get(i).containsX(x)) {
-                return spans.get(i);
-            }
+    /**
+     * Evaluates the curve at every value in xs in a single pass. Any of the
+     * output arrays may be null if that quantity isn't needed. When xs is
+     * sorted the spans are walked in order and each solve is seeded with the
+     * previous sample's t value, so no per-sample search or allocation is
+     * needed. Unsorted input is still handled, just without the seeding
+     * benefit. With the lookup table enabled every X value is answered from
+     * the table, as positionAtX, velocityAtX and accelAtX are.
+     * 
+     * @param xs
+     *            The X values at which to evaluate the curve
+     * @param positions
+     *            Filled with the curve position at each X value, or null
+     * @param velocities
+     *            Filled with the curve velocity at each X value, or null
+     * @param accels
+     *            Filled with the curve acceleration at each X value, or null
+     */
+    public void evaluateAtX(double[] xs, double[] positions, double[] velocities, double[] accels) {
+        compiled.evaluateAtX(xs, positions, velocities, accels);
+    }
+
+    /**
+     * @param xs
+     *            The X values at which to evaluate the curve
+     * @param positions
+     *            Filled with the curve position at each X value
+     */
+    public void positionsAtX(double[] xs, double[] positions) {
+        evaluateAtX(xs, positions, null, null);
+    }
+
+    /**
+     * When enabled, the span found by the last lookup is checked (along with
+     * the one after it) before falling back to a binary search, so monotone
+     * query streams resolve in constant time.
+     * 
+     * @param enabled
+     *            Whether to use the last span hit as a lookup hint
+     */
+    public synchronized void setLookupCursorEnabled(boolean enabled) {
+        this.cursorEnabled = enabled;
+        republish();
+    }
+
+    /**
+     * Switches positionAtX, velocityAtX and accelAtX to answer from a table
+     * of precomputed samples rather than solving for t on every query. The
+     * table is built on the next query and again after the control points
+     * change.
+     * 
+     * @param maxError
+     *            The largest acceptable position error, used to size the
+     *            table. It's checked at the quarter points of every table
+     *            interval.
+     * @param mode
+     *            How to interpolate between samples
+     */
+    public synchronized void enableLookupTable(double maxError, LookupTable.Interpolation mode) {
+        this.lutEnabled = true;
+        this.lutMaxError = maxError;
+        this.lutMode = mode;
+        republish();
+    }
+
+    public synchronized void disableLookupTable() {
+        this.lutEnabled = false;
+        republish();
+    }
+
+    /**
+     * Starts counting evaluations, solver iterations and rebuilds. Counting
+     * costs a little on every query, so it's off by default.
+     * 
+     * @return
+     *         The metrics being recorded, which can be registered with JMX
+     */
+    public synchronized BezierMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new BezierMetrics(compiled.getSpanCount());
+            republish();
         }
-        return null;
+        return metrics;
+    }
+
+    public synchronized void disableMetrics() {
+        if (metrics != null) {
+            metrics = null;
+            republish();
+        }
+    }
+
+    /**
+     * @return
+     *         The metrics being recorded, or null if they aren't enabled
+     */
+    public BezierMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return
+     *         The first X at which the curve reaches y, or ERROR if it never
+     *         does
+     */
+    public double xAtY(double y) {
+        return compiled.xAtY(y, -Double.MAX_VALUE);
+    }
+
+    /**
+     * Finds the first X at or after fromX at which the curve reaches y. Only
+     * spans whose Y range includes y are solved, and those are found by
+     * descending a tree of span bounds rather than by scanning.
+     * 
+     * @param y
+     *            The Y value to look for
+     * @param fromX
+     *            The X value to start looking from
+     * @return
+     *         The X value, or ERROR if the curve doesn't reach y after fromX
+     */
+    public double xAtY(double y, double fromX) {
+        return compiled.xAtY(y, fromX);
+    }
+
+    /**
+     * @return
+     *         The first X from which the velocity (dy/dx) exceeds v, or ERROR
+     *         if it never does
+     */
+    public double firstXWhereVelocityExceeds(double v) {
+        return compiled.firstXWhereVelocityExceeds(v, -Double.MAX_VALUE);
+    }
+
+    /**
+     * Finds the first X at or after fromX from which the velocity (dy/dx)
+     * exceeds v. Spans are pruned by velocity bounds from the convex hull of
+     * their control points, and the rest are solved exactly.
+     * 
+     * @param v
+     *            The velocity limit
+     * @param fromX
+     *            The X value to start looking from
+     * @return
+     *         The X value, or ERROR if the velocity doesn't exceed v after
+     *         fromX
+     */
+    public double firstXWhereVelocityExceeds(double v, double fromX) {
+        return compiled.firstXWhereVelocityExceeds(v, fromX);
+    }
+
+    /**
+     * Finds every X in [fromX, toX] at which the curve reaches y, including
+     * points where it touches y without crossing
+     * 
+     * @param y
+     *            The Y value to look for
+     * @param fromX
+     *            The start of the range to search
+     * @param toX
+     *            The end of the range to search
+     * @return
+     *         The X values in increasing order
+     */
+    public double[] crossingsOfY(double y, double fromX, double toX) {
+        return compiled.crossingsOfY(y, fromX, toX);
+    }
+
+    /**
+     * @return
+     *         The length of the curve, measured along the curve. The first
+     *         arc length query on each version of the curve builds its arc
+     *         length table, and later queries reuse it.
+     */
+    public double getArcLength() {
+        return compiled.getArcLengthTable().getLength();
+    }
+
+    /**
+     * @return
+     *         A bound on the quadrature error in getArcLength, which also
+     *         bounds the error in any distance along the curve
+     */
+    public double getArcLengthErrorBound() {
+        return compiled.getArcLengthTable().getErrorBound();
+    }
+
+    /**
+     * @return
+     *         The distance along the curve from its start to x, or ERROR if x
+     *         is outside of the curve
+     */
+    public double arcLengthAtX(double x) {
+        return compiled.arcLengthAtX(x);
+    }
+
+    /**
+     * @param s
+     *            The distance along the curve from its start, clamped to [0,
+     *            getArcLength()]
+     * @return
+     *         The point at that distance, or null if the curve is empty
+     */
+    public Point2D pointAtArcLength(double s) {
+        return compiled.getArcLengthTable().pointAtLength(s);
+    }
+
+    /**
+     * Samples points evenly spaced along the curve, rather than evenly
+     * spaced in X as getCurvePoints does
+     * 
+     * @param points
+     *            The number of intervals to divide the curve into
+     * @return
+     *         points + 1 points, from the start of the curve to its end
+     */
+    public List<Point2D> getArcLengthPoints(int points) {
+        double[] xs = new double[points + 1];
+        double[] ys = new double[points + 1];
+        sampleArcLength(points, xs, ys);
+        List<Point2D> ret = new ArrayList<Point2D>(points + 1);
+        if (compiled.getSpanCount() == 0)
+            return ret;
+        for (int i = 0; i <= points; i++) {
+            ret.add(new Point2D(xs[i], ys[i]));
+        }
+        return ret;
+    }
+
+    /**
+     * Samples the same points as getArcLengthPoints into primitive buffers
+     * 
+     * @param points
+     *            The number of intervals to divide the curve into. xs and ys
+     *            must hold at least points + 1 values.
+     * @param xs
+     *            Filled with the X value of each sample
+     * @param ys
+     *            Filled with the Y value of each sample
+     */
+    public void sampleArcLength(int points, double[] xs, double[] ys) {
+        compiled.getArcLengthTable().sample(points, xs, ys);
+    }
+
+    /**
+     * Caches point query results, so repeated queries at the same X values
+     * skip the span search and solve. A miss solves for t once and caches
+     * the position, velocity and acceleration together. Editing the curve
+     * invalidates every cached result. The cache is bypassed while the
+     * lookup table is enabled.
+     * 
+     * @param capacity
+     *            The most results to hold, rounded up to a power of two
+     * @return
+     *         The new cache, whose hit rate can be read as it's used
+     */
+    public synchronized ResultCache enableResultCache(int capacity) {
+        resultCache = new ResultCache(capacity);
+        republish();
+        return resultCache;
+    }
+
+    public synchronized void disableResultCache() {
+        if (resultCache != null) {
+            resultCache = null;
+            republish();
+        }
+    }
+
+    /**
+     * @return
+     *         The result cache, or null if it isn't enabled
+     */
+    public synchronized ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public boolean isLookupTableEnabled() {
+        return compiled.isLookupTableEnabled();
+    }
+
+    /**
+     * @return
+     *         The current lookup table, building it if needed, or null if the
+     *         lookup table mode isn't enabled
+     */
+    public LookupTable getLookupTable() {
+        return compiled.getLookupTable();
+    }
+
+    public double getSolverTolerance() {
+        return solverTolerance;
+    }
+
+    /**
+     * Sets the solver tolerance, publishing a new version of the curve so
+     * that cached results and lookup tables solved with the old tolerance
+     * aren't reused
+     * 
+     * @param tolerance
+     *            The change in t below which the X to t inversion is
+     *            considered converged
+     */
+    public synchronized void setSolverTolerance(double tolerance) {
+        if (tolerance == solverTolerance)
+            return;
+        this.solverTolerance = tolerance;
+        version++;
+        republish();
+    }
+
+    public Inversion getInversion() {
+        return inversion;
+    }
+
+    /**
+     * Sets the inversion method, publishing a new version of the curve as
+     * setSolverTolerance does
+     * 
+     * @param inversion
+     *            How every span of this curve inverts X to t. The solver
+     *            tolerance only applies to Inversion.NEWTON.
+     */
+    public synchronized void setInversion(Inversion inversion) {
+        if (inversion == this.inversion)
+            return;
+        this.inversion = inversion;
+        version++;
+        republish();
+    }
+
+    /**
+     * @param x
+     *            The X value to look up
+     * @return
+     *         The index of the first span containing x, or -1 if x is outside
+     *         of the curve
+     */
+    int spanIndexContainingX(double x) {
+        return compiled.spanIndexContainingX(x);
     }
 
     double getStartX() {
-        if (spans.size() != 0)
-            return spans.get(spans.size() - 1).getStartX();
-        else
-            return 0f;
+        return compiled.getStartX();
     }
 
     double getStopX() {
-        if (spans.size() != 0)
-            return spans.get(spans.size() - 1).getStopX();
-        else
-            return 0f;
+        return compiled.getStopX();
     }
 
     double getRangeX() {
@@ -175,25 +791,24 @@ public class Bezier extends Model {
     }
 
     double getStartY() {
-        if (spans.size() != 0)
-            return spans.get(spans.size() - 1).getStartY();
-        else
-            return 0f;
+        return compiled.getStartY();
     }
 
     double getStopY() {
-        if (spans.size() != 0)
-            return spans.get(spans.size() - 1).getStopY();
-        else
-            return 0f;
+        return compiled.getStopY();
     }
 
     Span getSpan(int which) {
-        return spans.get(which);
+        return compiled.getSpan(which);
     }
 
+    /**
+     * @return
+     *         A copy of the control points of the current version of the
+     *         curve, which can be read on any thread while the curve is edited
+     */
     List<Point2D> getCtrlPts() {
-        return ctrlPts;
+        return compiled.getCtrlPts();
     }
 
     /**
@@ -206,144 +821,589 @@ public class Bezier extends Model {
      *         Bezier curve
      */
     public List<Point2D> getCurvePoints(int points) {
-        List<Point2D> ret = new ArrayList<Point2D>();
-
-        double increment = getStopX() / points;
-        for (int i = 0; i <= points; i++) {
-            double x = i * increment;
-            double y = positionAtX(x);
-            ret.add(new Point2D(x, y));
-        }
+        final List<Point2D> ret = new ArrayList<Point2D>(points + 1);
+        forEachCurvePoint(points, new SampleConsumer() {
+            public void accept(double x, double y) {
+                ret.add(new Point2D(x, y));
+            }
+        });
         return ret;
     }
 
-    public List<Point2D> getScaledCurvePoints(int points) {
-        List<Point2D> pts = getCurvePoints(points);
-        double minX = getStartX();
-        double rangeX = getStopX() - minX;
-        double minY = getMinY();
-        double rangeY = getMaxY() - minY;
+    /**
+     * Streams the same samples as getCurvePoints to a callback, one at a
+     * time, so memory use doesn't depend on the number of points
+     * 
+     * @param points
+     *            The number of intervals to divide the curve into
+     * @param consumer
+     *            Receives each (x, y) sample in order
+     */
+    public void forEachCurvePoint(int points, SampleConsumer consumer) {
+        curveSpliterator(points, false).forEachRemaining(consumer);
+    }
+
+    /**
+     * Streams the same samples as getScaledCurvePoints to a callback, one at
+     * a time, normalizing each from the cached curve extents
+     * 
+     * @param points
+     *            The number of intervals to divide the curve into
+     * @param consumer
+     *            Receives each scaled (x, y) sample in order
+     */
+    public void forEachScaledCurvePoint(int points, SampleConsumer consumer) {
+        curveSpliterator(points, true).forEachRemaining(consumer);
+    }
 
-        int signX = minX > 0 ? -1 : 1;
-        int signY = minY > 0 ? -1 : 1;
+    /**
+     * @param points
+     *            The number of intervals to divide the curve into
+     * @param scaled
+     *            Whether to normalize the samples as getScaledCurvePoints
+     *            does
+     * @return
+     *         A splittable source of the curve's Y samples. The samples
+     *         are evenly spaced in X from getStartX() through getStopX(), or
+     *         their scaled equivalent, and
+     *         CurveSpliterator.forEachRemaining(SampleConsumer) provides both
+     *         X and Y.
+     */
+    public CurveSpliterator curveSpliterator(int points, boolean scaled) {
+        CompiledCurve curve = compiled;
+        return new CurveSpliterator(curve, 0, points + 1, (curve.getStopX() - curve.getStartX()) / points, scaled);
+    }
 
-        for (int i = 0; i < pts.size(); i++) {
-            Point2D p = pts.get(i);
+    /**
+     * @return
+     *         A lazily evaluated stream of the curve's Y samples, in the same
+     *         order as getCurvePoints
+     */
+    public DoubleStream curveStream(int points, boolean parallel) {
+        return StreamSupport.doubleStream(curveSpliterator(points, false), parallel);
+    }
 
-            // Move the X start and min Y values to 0
-            double x = (p.getX() + minX * signX);
-            double y = (p.getY() + minY * signY);
+    /**
+     * Samples the curve at points + 1 evenly spaced X values from getStartX()
+     * through getStopX(), writing into primitive buffers rather than a list
+     * of points
+     * 
+     * @param points
+     *            The number of intervals to divide the curve into. xs and ys
+     *            must hold at least points + 1 values.
+     * @param xs
+     *            Filled with the X value of each sample
+     * @param ys
+     *            Filled with the Y value of each sample
+     */
+    public void sampleCurve(int points, double[] xs, double[] ys) {
+        CompiledCurve curve = compiled;
+        sampleRange(curve, 0, points + 1, (curve.getStopX() - curve.getStartX()) / points, xs, ys);
+    }
 
-            // Scale the values based on the spline range
-            x /= rangeX;
-            y /= rangeY;
+    /**
+     * Samples the curve like sampleCurve, splitting the work by span across
+     * the common fork-join pool. Each sample is computed independently, so
+     * the results are identical to the sequential path.
+     */
+    public void sampleCurveParallel(int points, double[] xs, double[] ys) {
+        sampleCurveParallel(points, xs, ys, ForkJoinPool.commonPool());
+    }
 
-            pts.set(i, new Point2D(x, y));
+    /**
+     * @param pool
+     *            The pool to run the sampling tasks on
+     * @see #sampleCurveParallel(int, double[], double[])
+     */
+    public void sampleCurveParallel(int points, double[] xs, double[] ys, ForkJoinPool pool) {
+        CompiledCurve curve = compiled;
+        int spanCount = curve.getSpanCount();
+        if (spanCount == 0) {
+            sampleRange(curve, 0, points + 1, 0, xs, ys);
+            return;
         }
-        return pts;
+
+        // Build the lookup table up front rather than racing to build it
+        curve.getLookupTable();
+
+        double increment = (curve.getStopX() - curve.getStartX()) / points;
+        int spansPerTask = Math.max(1, spanCount / (pool.getParallelism() * 4));
+        pool.invoke(new SampleTask(curve, 0, spanCount, spansPerTask, points + 1, increment, xs, ys));
     }
 
-    private double getMinY() {
-        double ret = 0;
-        for (Span s : spans) {
-            double val = s.getMinY();
-            if (val < ret)
-                ret = val;
+    /**
+     * Fills samples [from, to) without touching the shared lookup cursor
+     */
+    private void sampleRange(CompiledCurve curve, int from, int to, double increment, double[] xs, double[] ys) {
+        CurveSpliterator samples = new CurveSpliterator(curve, from, to, increment, false);
+        for (int i = from; i < to; i++) {
+            double x = sampleX(curve, i, increment);
+            xs[i] = x;
+            ys[i] = samples.sampleAt(x);
         }
+    }
+
+    /**
+     * @return
+     *         The X value of sample i at increment spacing from the start of
+     *         the curve. The last sample can round past the end of the curve,
+     *         so it's clamped to the end.
+     */
+    private static double sampleX(CompiledCurve curve, int i, double increment) {
+        return Math.min(curve.getStartX() + i * increment, curve.getStopX());
+    }
+
+    /**
+     * @return
+     *         The index of the first sample at increment spacing that falls
+     *         in the given span, or sampleCount if there is none
+     */
+    private static int firstSampleInSpan(CompiledCurve curve, int span, double increment, int sampleCount) {
+        if (span == 0)
+            return 0;
+        if (span >= curve.getSpanCount())
+            return sampleCount;
+
+        // Knots belong to the earlier span, so find the first sample past
+        // this span's start
+        double start = curve.getSpanStartX(span);
+        int i = (int) Math.max(0, Math.min(sampleCount, Math.floor((start - curve.getStartX()) / increment)));
+        while (i > 0 && sampleX(curve, i - 1, increment) > start)
+            i--;
+        while (i < sampleCount && sampleX(curve, i, increment) <= start)
+            i++;
+        return i;
+    }
+
+    private class SampleTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CompiledCurve curve;
+        private final int         firstSpan;
+        private final int         lastSpan;
+        private final int         spansPerTask;
+        private final int         sampleCount;
+        private final double      increment;
+        private final double[]    xs;
+        private final double[]    ys;
+
+        SampleTask(CompiledCurve curve, int firstSpan, int lastSpan, int spansPerTask, int sampleCount,
+                double increment, double[] xs, double[] ys) {
+            this.curve = curve;
+            this.firstSpan = firstSpan;
+            this.lastSpan = lastSpan;
+            this.spansPerTask = spansPerTask;
+            this.sampleCount = sampleCount;
+            this.increment = increment;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        @Override
+        protected void compute() {
+            if (lastSpan - firstSpan <= spansPerTask) {
+                int from = firstSampleInSpan(curve, firstSpan, increment, sampleCount);
+                int to = firstSampleInSpan(curve, lastSpan, increment, sampleCount);
+                sampleRange(curve, from, to, increment, xs, ys);
+                return;
+            }
+            int mid = (firstSpan + lastSpan) >>> 1;
+            invokeAll(new SampleTask(curve, firstSpan, mid, spansPerTask, sampleCount, increment, xs, ys),
+                    new SampleTask(curve, mid, lastSpan, spansPerTask, sampleCount, increment, xs, ys));
+        }
+    }
+
+    /**
+     * Approximates the curve with as few line segments as possible. Each span
+     * is split with de Casteljau's algorithm until its control points lie
+     * within tolerance of the chord, which bounds the distance between the
+     * curve and the polyline since a span lies inside its control polygon.
+     * 
+     * @param tolerance
+     *            The largest allowed distance between the curve and the
+     *            polyline, in curve units
+     * @param scaled
+     *            Whether to normalize the points as getScaledCurvePoints does
+     * @param consumer
+     *            Receives each polyline vertex in order
+     */
+    public void tessellate(double tolerance, boolean scaled, SampleConsumer consumer) {
+        CompiledCurve curve = compiled;
+        if (curve.getSpanCount() == 0)
+            return;
+
+        if (scaled) {
+            final SampleConsumer target = consumer;
+            final double minX = curve.getStartX();
+            final double rangeX = curve.getStopX() - minX;
+            final double minY = curve.getMinY();
+            final double rangeY = curve.getMaxY() - minY;
+            consumer = new SampleConsumer() {
+                public void accept(double x, double y) {
+                    target.accept((x - minX) / rangeX, (y - minY) / rangeY);
+                }
+            };
+        }
+
+        consumer.accept(curve.getStartX(), curve.getStartY());
+        for (int i = 0; i < curve.getSpanCount(); i++) {
+            Point2D[] pts = curve.getSpan(i).ctrlPts;
+            subdivide(pts[0].x(), pts[0].y(), pts[1].x(), pts[1].y(), pts[2].x(), pts[2].y(), pts[3].x(), pts[3].y(),
+                    tolerance * tolerance, 0, consumer);
+        }
+    }
+
+    /**
+     * @return
+     *         The tessellated curve as a list of points
+     * @see #tessellate(double, boolean, SampleConsumer)
+     */
+    public List<Point2D> getTessellatedPoints(double tolerance, boolean scaled) {
+        final List<Point2D> ret = new ArrayList<Point2D>();
+        tessellate(tolerance, scaled, new SampleConsumer() {
+            public void accept(double x, double y) {
+                ret.add(new Point2D(x, y));
+            }
+        });
         return ret;
     }
 
-    private double getMaxY() {
-        double ret = 0;
-        for (Span s : spans) {
-            double val = s.getMaxY();
-            if (val > ret)
-                ret = val;
+    private static void subdivide(double x0, double y0, double x1, double y1, double x2, double y2, double x3,
+            double y3, double toleranceSq, int depth, SampleConsumer consumer) {
+        boolean flat = distanceToChordSq(x1, y1, x0, y0, x3, y3) <= toleranceSq
+                && distanceToChordSq(x2, y2, x0, y0, x3, y3) <= toleranceSq;
+        if (flat || depth >= TESSELLATION_DEPTH) {
+            consumer.accept(x3, y3);
+            return;
         }
+
+        // de Casteljau split at t = 0.5
+        double x01 = (x0 + x1) * 0.5;
+        double y01 = (y0 + y1) * 0.5;
+        double x12 = (x1 + x2) * 0.5;
+        double y12 = (y1 + y2) * 0.5;
+        double x23 = (x2 + x3) * 0.5;
+        double y23 = (y2 + y3) * 0.5;
+        double x012 = (x01 + x12) * 0.5;
+        double y012 = (y01 + y12) * 0.5;
+        double x123 = (x12 + x23) * 0.5;
+        double y123 = (y12 + y23) * 0.5;
+        double xMid = (x012 + x123) * 0.5;
+        double yMid = (y012 + y123) * 0.5;
+
+        subdivide(x0, y0, x01, y01, x012, y012, xMid, yMid, toleranceSq, depth + 1, consumer);
+        subdivide(xMid, yMid, x123, y123, x23, y23, x3, y3, toleranceSq, depth + 1, consumer);
+    }
+
+    /**
+     * @return
+     *         The squared distance from (px, py) to the segment from (x0, y0)
+     *         to (x1, y1)
+     */
+    private static double distanceToChordSq(double px, double py, double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double lengthSq = dx * dx + dy * dy;
+        double u = lengthSq > 0 ? ((px - x0) * dx + (py - y0) * dy) / lengthSq : 0;
+        u = u < 0 ? 0 : u > 1 ? 1 : u;
+        double ex = px - (x0 + u * dx);
+        double ey = py - (y0 + u * dy);
+        return ex * ex + ey * ey;
+    }
+
+    public List<Point2D> getScaledCurvePoints(int points) {
+        final List<Point2D> ret = new ArrayList<Point2D>(points + 1);
+        forEachScaledCurvePoint(points, new SampleConsumer() {
+            public void accept(double x, double y) {
+                ret.add(new Point2D(x, y));
+            }
+        });
         return ret;
     }
 
-    private class Span {
-        private final static int MAX_CTRL_PTS = 4;
+    /**
+     * Lazily evaluates evenly spaced samples of the curve. Splitting divides
+     * the remaining sample indices in half, and each sample is computed
+     * independently, so parallel traversal gives the same values as
+     * sequential traversal. It holds the version of the curve it was created
+     * from, so later edits don't affect it.
+     */
+    public static class CurveSpliterator implements Spliterator.OfDouble {
+        private final static int MIN_SPLIT = 1024;
+
+        private final CompiledCurve curve;
+        private int              index;
+        private final int        end;
+        private final double     increment;
+        private final boolean    scaled;
+        private final double     minX;
+        private final double     rangeX;
+        private final double     minY;
+        private final double     rangeY;
+        private int              span    = -1;
+
+        CurveSpliterator(CompiledCurve curve, int index, int end, double increment, boolean scaled) {
+            this.curve = curve;
+            this.index = index;
+            this.end = end;
+            this.increment = increment;
+            this.scaled = scaled;
+            this.minX = curve.getStartX();
+            this.rangeX = curve.getStopX() - minX;
+            this.minY = curve.getMinY();
+            this.rangeY = curve.getMaxY() - minY;
+        }
 
-        private int              id;
-        private Span             nextSpan;
-        private Span             prevSpan;
-        private Point2D          coeffA;
-        private Point2D          coeffB;
-        private Point2D          coeffC;
-        private Point2D          coeffD;
-        private int              recursionIndex;
-        private Point2D[]        ctrlPts      = new Point2D[4];
-        private final static int SEARCH_COUNT = 500;
+        private double x(int i) {
+            double x = sampleX(curve, i, increment);
+            return scaled ? (x - minX) / rangeX : x;
+        }
+
+        private double y(int i) {
+            double y = sampleAt(sampleX(curve, i, increment));
+            return scaled ? (y - minY) / rangeY : y;
+        }
 
         /**
-         * Default constructor
+         * Same as positionAtX, but walks forward from the last sample's span
+         * rather than using the shared lookup cursor. This picks the same span
+         * as spanIndexContainingX since spans share their end knots.
          */
-        public Span() {
-            id = spanIdGen++;
+        private double sampleAt(double x) {
+            int count = curve.getSpanCount();
+            if (count == 0 || x < curve.getStartX() || x > curve.getStopX())
+                return ERROR;
+            if (span < 0)
+                span = curve.spanIndexOwning(x);
+            while (span < count - 1 && x > curve.getSpan(span).getStopX())
+                span++;
+            return curve.positionInSpan(span, x);
         }
 
+        public boolean tryAdvance(SampleConsumer action) {
+            if (index >= end)
+                return false;
+            action.accept(x(index), y(index));
+            index++;
+            return true;
+        }
+
+        public void forEachRemaining(SampleConsumer action) {
+            for (; index < end; index++) {
+                action.accept(x(index), y(index));
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            if (index >= end)
+                return false;
+            action.accept(y(index));
+            index++;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(DoubleConsumer action) {
+            for (; index < end; index++) {
+                action.accept(y(index));
+            }
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            int remaining = end - index;
+            if (remaining < MIN_SPLIT * 2)
+                return null;
+            curve.getLookupTable();
+            int mid = index + remaining / 2;
+            CurveSpliterator prefix = new CurveSpliterator(curve, index, mid, increment, scaled);
+            index = mid;
+            span = -1;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED;
+        }
+    }
+
+    /**
+     * @return
+     *         The lowest Y value reached anywhere on the curve
+     */
+    double getMinY() {
+        return compiled.getMinY();
+    }
+
+    /**
+     * @return
+     *         The highest Y value reached anywhere on the curve
+     */
+    double getMaxY() {
+        return compiled.getMaxY();
+    }
+
+    /**
+     * One cubic piece of the curve. A span never changes once it has been
+     * built, so it can be shared between versions of the curve and read from
+     * any thread.
+     */
+    class Span implements RootSolver.Function {
+        private final static int MAX_CTRL_PTS = 4;
+
+        private final int        id;
+        private final double[]   coeffs;
+        private final int        base;
+        private final Point2D[]  ctrlPts;
+        private double           minY;
+        private double           maxY;
+        final static double      NO_GUESS        = -1;
+
         /**
          * 
          * @param ctrlPts
          *            An array of size 4 of Point2D objects representing the
-         *            control point locations
-         * @param prevSpan
-         *            A reference to the previous span to which this span is
-         *            attached. If this is the first span in a Bezier, set
-         *            prevSpan to null.
+         *            control point locations, which must not be changed
+         *            afterwards
+         * @param coeffs
+         *            The coefficient array this span fills and evaluates from,
+         *            either the curve's packed array or one of its own
+         * @param base
+         *            The index of this span's first coefficient in coeffs
          */
-        public Span(Point2D[] ctrlPts, Span prevSpan) {
+        Span(Point2D[] ctrlPts, double[] coeffs, int base) {
             id = spanIdGen++;
-            recursionIndex = 0;
-            this.nextSpan = null;
             this.ctrlPts = ctrlPts;
-            setPrevSpan(prevSpan);
+            this.coeffs = coeffs;
+            this.base = base;
             setCoeffs();
+            setExtrema();
         }
 
         public int getId() {
             return this.id;
         }
 
-        public Span getNextSpan() {
-            return this.nextSpan;
-        }
-
-        public void setNextSpan(Span nextSpan) {
-            this.nextSpan = nextSpan;
+        Point2D getCtrlPt(int which) {
+            return ctrlPts[which];
         }
 
-        public Span getPrevSpan() {
-            return this.prevSpan;
-        }
-
-        public void setPrevSpan(Span prevSpan) {
-            this.prevSpan = prevSpan;
-            if (prevSpan != null)
-                prevSpan.setNextSpan(this);
+        /**
+         * @param which
+         *            0 to 7, in the order (ax, bx, cx, dx, ay, by, cy, dy)
+         */
+        double getCoeff(int which) {
+            return coeffs[base + which];
         }
 
         private void setCoeffs() {
+            double x0 = ctrlPts[0].x();
+            double x1 = ctrlPts[1].x();
+            double x2 = ctrlPts[2].x();
+            double x3 = ctrlPts[3].x();
+            double y0 = ctrlPts[0].y();
+            double y1 = ctrlPts[1].y();
+            double y2 = ctrlPts[2].y();
+            double y3 = ctrlPts[3].y();
 
             // A = (-pt0) + (3 * pt1) + (-3 * pt2) + pt3
-            coeffA = ctrlPts[0].scale(-1);
-            coeffA = coeffA.plus(ctrlPts[1].scale(3));
-            coeffA = coeffA.plus(ctrlPts[2].scale(-3));
-            coeffA = coeffA.plus(ctrlPts[3]);
+            coeffs[base] = -x0 + 3 * x1 - 3 * x2 + x3;
+            coeffs[base + 4] = -y0 + 3 * y1 - 3 * y2 + y3;
 
             // B = (3 * pt0) + (-6 * pt1) + (3 * pt2)
-            coeffB = ctrlPts[0].scale(3);
-            coeffB = coeffB.plus(ctrlPts[1].scale(-6));
-            coeffB = coeffB.plus(ctrlPts[2].scale(3));
+            coeffs[base + 1] = 3 * x0 - 6 * x1 + 3 * x2;
+            coeffs[base + 5] = 3 * y0 - 6 * y1 + 3 * y2;
 
             // C = (-3 * pt0) + (3 * pt1)
-            coeffC = ctrlPts[0].scale(-3);
-            coeffC = coeffC.plus(ctrlPts[1].scale(3));
+            coeffs[base + 2] = -3 * x0 + 3 * x1;
+            coeffs[base + 6] = -3 * y0 + 3 * y1;
 
             // D = pt0
-            coeffD = ctrlPts[0];
+            coeffs[base + 3] = x0;
+            coeffs[base + 7] = y0;
+        }
+
+        /**
+         * Finds the Y extrema of the span from its end points and the roots
+         * of Y'(t) that fall inside the span
+         */
+        private void setExtrema() {
+            minY = Math.min(getStartY(), getStopY());
+            maxY = Math.max(getStartY(), getStopY());
+
+            double[] turns = new double[2];
+            int count = turningPointsOfY(turns);
+            for (int i = 0; i < count; i++) {
+                double y = solveCubic(turns[i], false);
+                if (y < minY)
+                    minY = y;
+                if (y > maxY)
+                    maxY = y;
+            }
+        }
+
+        /**
+         * Finds the t values strictly inside the span where Y'(t) = 0
+         * 
+         * @param out
+         *            Filled with up to two t values, in increasing order
+         * @return
+         *         The number of t values found
+         */
+        private int turningPointsOfY(double[] out) {
+
+            // Y'(t) = 3At^2 + 2Bt + C
+            double a = 3 * coeffs[base + 4];
+            double b = 2 * coeffs[base + 5];
+            double c = coeffs[base + 6];
+            return quadraticRoots(a, b, c, 0, 1, out);
+        }
+
+        /**
+         * Finds the roots of at^2 + bt + c strictly between lo and hi
+         * 
+         * @param out
+         *            Filled with up to two roots, in increasing order
+         * @return
+         *         The number of roots found
+         */
+        private int quadraticRoots(double a, double b, double c, double lo, double hi, double[] out) {
+            int count = 0;
+            if (a == 0) {
+                if (b != 0)
+                    count = includeRoot(-c / b, lo, hi, out, count);
+                return count;
+            }
+
+            double discriminant = b * b - 4 * a * c;
+            if (discriminant < 0)
+                return 0;
+
+            // Numerically stable quadratic roots
+            double q = -0.5 * (b + Math.copySign(Math.sqrt(discriminant), b));
+            count = includeRoot(q / a, lo, hi, out, count);
+            if (q != 0)
+                count = includeRoot(c / q, lo, hi, out, count);
+            if (count == 2 && out[0] > out[1]) {
+                double swap = out[0];
+                out[0] = out[1];
+                out[1] = swap;
+            }
+            return count;
+        }
+
+        private int includeRoot(double t, double lo, double hi, double[] out, int count) {
+            if (t <= lo || t >= hi)
+                return count;
+            out[count] = t;
+            return count + 1;
         }
 
         public double solveCubic(double val, boolean isX) {
@@ -351,78 +1411,213 @@ public class Bezier extends Model {
         }
 
         public double solveCubic(double t, boolean isX, double offset) {
-            double ret;
+            int i = isX ? base : base + 4;
 
             // P(t) = At^3 + Bt^2 + Ct + D
             // Calculate via Horner's rule
-            double A = isX ? coeffD.getX() : coeffA.getY();
-            double B = isX ? coeffB.getX() : coeffB.getY();
-            double C = isX ? coeffC.getX() : coeffC.getY();
-            double D = isX ? coeffD.getX() : coeffD.getY();
-
-            double term = t;
-            ret = D - offset;
-            ret += term * C;
-            term *= t;
-            ret += term * B;
-            term *= t;
-            ret += term * A;
-            return ret;
-
+            return ((coeffs[i] * t + coeffs[i + 1]) * t + coeffs[i + 2]) * t + coeffs[i + 3] - offset;
         }
 
         public double solveCubicPrime(double t, boolean isX) {
-            double ret;
-
-            double A = isX ? coeffD.getX() : coeffA.getY();
-            double B = isX ? coeffB.getX() : coeffB.getY();
-            double C = isX ? coeffC.getX() : coeffC.getY();
+            int i = isX ? base : base + 4;
 
             // P'(t) = 3At^2 + 2Bt + C
             // Calculate via Horner's rule
-            double term = t;
-            ret = C;
-            ret += term * B * 2;
-            term *= t;
-            ret += term * A * 3;
-            return ret;
+            return (3 * coeffs[i] * t + 2 * coeffs[i + 1]) * t + coeffs[i + 2];
         }
 
         public double solveCubicDoublePrime(double t, boolean isX) {
-            double ret;
+            int i = isX ? base : base + 4;
 
-            double A = isX ? coeffD.getX() : coeffA.getY();
-            double B = isX ? coeffB.getX() : coeffB.getY();
+            // P''(t) = 6At + 2B
+            return 6 * coeffs[i] * t + 2 * coeffs[i + 1];
+        }
 
-            // P'(t) = 6At + 2B
-            double term = t;
-            ret = 6 * A * term + 2 * B;
-            return ret;
+        public double tOfX(double x) {
+            return tOfX(x, NO_GUESS);
         }
 
-        public double tOfX(double x, double guess, int recursionLimit) {
-            if (x == 0)
-                return 0f;
-
-            double convergenceThreshold = 1.5e-5f;
-
-            // Find f(guess) and f'(guess)
-            double fOfGuess = solveCubic(guess, true, x);
-            double fPrimeOfGuess = solveCubicPrime(guess, true);
-            // Newton's method
-            double newGuess = guess - (fOfGuess / fPrimeOfGuess);
-            recursionIndex++;
-            // Return when close enough or exceeding recursion limit
-            if (Math.abs(newGuess - guess) < convergenceThreshold || recursionIndex == recursionLimit) {
-                // Be sure to reset the recursion index, otherwise the function
-                // will return after too few iterations upon future calls
-                recursionIndex = 0;
-                return newGuess;
+        /**
+         * Finds every t in [from, to] at which the span reaches y. Y is
+         * monotone between its turning points, so each piece between them
+         * holds at most one root, found with the same bracketed Newton solve
+         * as tOfX.
+         * 
+         * @param out
+         *            Filled with up to three t values, in increasing order
+         * @param tolerance
+         *            The solver tolerance of the snapshot being queried
+         * @return
+         *         The number of t values found
+         */
+        int tsOfY(double y, double from, double to, double[] out, double tolerance) {
+            if (to <= from) {
+                if (to == from && solveCubic(from, false, y) == 0) {
+                    out[0] = from;
+                    return 1;
+                }
+                return 0;
             }
-            // Otherwise do another iteration
-            else {
-                return tOfX(x, newGuess, recursionLimit);
+
+            double[] turns = new double[2];
+            int turnCount = turningPointsOfY(turns);
+            int count = 0;
+            double a = from;
+            double fa = solveCubic(a, false, y);
+            for (int i = 0; i <= turnCount && a < to; i++) {
+                double b = i < turnCount ? Math.min(turns[i], to) : to;
+                if (b <= a)
+                    continue;
+                double fb = solveCubic(b, false, y);
+
+                double root;
+                if (fa == 0)
+                    root = a;
+                else if (fb == 0)
+                    root = b;
+                else if ((fa < 0) != (fb < 0))
+                    root = tOfYInPiece(y, a, b, fa, tolerance);
+                else
+                    root = NO_GUESS;
+
+                // A root on a turning point ends one piece and starts the
+                // next, so only count it once
+                if (root != NO_GUESS && (count == 0 || root > out[count - 1]))
+                    out[count++] = root;
+                a = b;
+                fa = fb;
+            }
+            return count;
+        }
+
+        /**
+         * Solves Y(t) = y on a piece [lo, hi] where Y is monotone and changes
+         * sign
+         */
+        private double tOfYInPiece(final double y, double lo, double hi, double fLo, double tolerance) {
+            double fHi = solveCubic(hi, false, y);
+            double guess = lo + (hi - lo) * fLo / (fLo - fHi);
+            RootSolver.Function f = new RootSolver.Function() {
+                public double value(double t) {
+                    return solveCubic(t, false);
+                }
+
+                public double slope(double t) {
+                    return solveCubicPrime(t, false);
+                }
+            };
+            return RootSolver.newton(f, y, lo, hi, guess, tolerance, fLo < 0, null);
+        }
+
+        /**
+         * Finds where the span's velocity first rises above v. Where X
+         * increases with t, dy/dx > v exactly when Y'(t) - v X'(t) > 0, and
+         * that is a quadratic in t, so its roots are found directly.
+         * 
+         * @param from
+         *            The t value to start looking from
+         * @return
+         *         The first t in [from, 1] from which the velocity exceeds v,
+         *         or NO_GUESS if it never does
+         */
+        double tWhereVelocityExceeds(double v, double from) {
+            double a = 3 * (coeffs[base + 4] - v * coeffs[base]);
+            double b = 2 * (coeffs[base + 5] - v * coeffs[base + 1]);
+            double c = coeffs[base + 6] - v * coeffs[base + 2];
+            if ((a * from + b) * from + c > 0)
+                return from;
+
+            // The roots split [from, 1] into pieces of constant sign, and the
+            // velocity exceeds v from the start of the first positive piece.
+            // That can be from itself, when the quadratic is zero there and
+            // turns positive right after.
+            double[] roots = new double[2];
+            int count = quadraticRoots(a, b, c, from, 1, roots);
+            double start = from;
+            for (int i = 0; i <= count; i++) {
+                double end = i < count ? roots[i] : 1;
+                double mid = (start + end) * 0.5;
+                if ((a * mid + b) * mid + c > 0)
+                    return start;
+                start = end;
             }
+            return NO_GUESS;
+        }
+
+        /**
+         * Finds the t value at which this span reaches x, using the inversion
+         * method and solver tolerance of the curve's current version. No
+         * state is kept between calls, so a span may be queried from several
+         * threads at once.
+         * 
+         * @param x
+         *            The X value to invert
+         * @param guess
+         *            A starting t value, such as the result of a previous
+         *            solve at a nearby X. Pass a value outside of [0, 1] to
+         *            start from a linear interpolation on X instead. Ignored
+         *            by the closed form inversion.
+         * @return
+         *         The t value at which this span reaches x
+         */
+        public double tOfX(double x, double guess) {
+            return compiled.tOfX(this, x, guess);
+        }
+
+        /**
+         * @param inversion
+         *            The inversion method of the snapshot being queried
+         * @param tolerance
+         *            The solver tolerance of the snapshot being queried
+         * @param metrics
+         *            Where to count the Newton iterations, normally those of
+         *            the snapshot being queried, or null
+         * @see #tOfX(double, double)
+         */
+        double tOfX(double x, double guess, Inversion inversion, double tolerance, BezierMetrics metrics) {
+            if (inversion == Inversion.CLOSED_FORM)
+                return tOfXClosedForm(x);
+            return tOfXNewton(x, guess, tolerance, metrics);
+        }
+
+        /**
+         * Bracketed Newton iteration on X(t), which always converges on a
+         * span with monotone X
+         */
+        double tOfXNewton(double x, double guess, double tolerance, BezierMetrics metrics) {
+            double t = guess >= 0 && guess <= 1 ? guess : linearGuess(x);
+            return RootSolver.newton(this, x, 0, 1, t, tolerance, true, metrics);
+        }
+
+        /**
+         * @return
+         *         X(t), for RootSolver
+         */
+        public double value(double t) {
+            return solveCubic(t, true);
+        }
+
+        /**
+         * @return
+         *         X'(t), for RootSolver
+         */
+        public double slope(double t) {
+            return solveCubicPrime(t, true);
+        }
+
+        /**
+         * Solves X(t) = x for the root in [0, 1] without iterating
+         */
+        double tOfXClosedForm(double x) {
+            return RootSolver.cubicRoot(coeffs[base], coeffs[base + 1], coeffs[base + 2], coeffs[base + 3], x);
+        }
+
+        private double linearGuess(double x) {
+            double range = getRangeX();
+            if (range <= 0)
+                return 0;
+            double t = (x - getStartX()) / range;
+            return t < 0 ? 0 : t > 1 ? 1 : t;
         }
 
         public boolean containsX(double x) {
@@ -432,8 +1627,13 @@ public class Bezier extends Model {
                 return false;
         }
 
+        /**
+         * @return
+         *         Whether the span reaches y anywhere, including between its
+         *         end points
+         */
         public boolean containsY(double y) {
-            if (getStartY() <= y && y <= getStopY())
+            if (minY <= y && y <= maxY)
                 return true;
             else
                 return false;
@@ -448,25 +1648,11 @@ public class Bezier extends Model {
         }
 
         public double getMinY() {
-            double inc = getRangeX() / SEARCH_COUNT;
-            double ret = 0;
-            for (int i = 0; i <= SEARCH_COUNT; i++) {
-                double pos = positionAtX(i * inc);
-                if (pos < ret)
-                    ret = pos;
-            }
-            return ret;
+            return minY;
         }
 
         public double getMaxY() {
-            double inc = getRangeX() / SEARCH_COUNT;
-            double ret = 0;
-            for (int i = 0; i <= SEARCH_COUNT; i++) {
-                double pos = positionAtX(i * inc);
-                if (pos > ret)
-                    ret = pos;
-            }
-            return ret;
+            return maxY;
         }
 
         public double getRangeX() {
@@ -485,20 +1671,25 @@ public class Bezier extends Model {
             return this.getStopY() - this.getStartY();
         }
 
-        double positionAtX(double x) {
-            double t = tOfX(x, 0.5f, 15);
-            return solveCubic(t, false);
-        };
-
-        double velocityAtX(double x) {
-            double t = tOfX(x, 0.5f, 15);
-            return solveCubicPrime(t, false);
-        };
+        /**
+         * @return
+         *         dy/dx at the given t value
+         */
+        double velocityAtT(double t) {
+            return solveCubicPrime(t, false) / solveCubicPrime(t, true);
+        }
 
-        double accelAtX(double p_x) {
-            double t = tOfX(p_x, 0.5f, 15);
-            return solveCubicDoublePrime(t, false);
-        };
+        /**
+         * @return
+         *         d^2y/dx^2 at the given t value
+         */
+        double accelAtT(double t) {
+            double xPrime = solveCubicPrime(t, true);
+            double yPrime = solveCubicPrime(t, false);
+            double xDoublePrime = solveCubicDoublePrime(t, true);
+            double yDoublePrime = solveCubicDoublePrime(t, false);
+            return (yDoublePrime * xPrime - yPrime * xDoublePrime) / (xPrime * xPrime * xPrime);
+        }
 
     }
 
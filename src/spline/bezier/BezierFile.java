@@ -0,0 +1,222 @@
+package spline.bezier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import math.geom2d.Point2D;
+
+/**
+ * Reads and writes curves in a little-endian binary format:
+ * 
+ * <pre>
+ * offset  size  field
+ *      0     4  magic, "BEZC"
+ *      4     4  format version
+ *      8     4  flags, bit 0 set if coefficients and extrema follow, bit
+ *               1 set if the curve inverts X with the closed form
+ *     12     4  span count
+ *     16     4  control point count, span count * 3 + 1
+ *     20     4  reserved
+ *     24     8  lowest Y on the curve
+ *     32     8  highest Y on the curve
+ *     40     8  solver tolerance
+ *     48        control points as (x, y) pairs
+ *               then optionally the coefficients of each span as
+ *               (ax, bx, cx, dx, ay, by, cy, dy)
+ *               then optionally the (minY, maxY) of each span
+ * </pre>
+ * 
+ * Every double is 8 byte aligned, so a mapped file can be read in place. A
+ * file must fit in a single mapping, which limits it to 2 GB, or about 16
+ * million spans with coefficients.
+ */
+public final class BezierFile {
+
+    final static int  MAGIC            = 0x435A4542;
+    final static int  FORMAT_VERSION   = 2;
+    final static int  FLAG_COEFFS      = 1;
+    final static int  FLAG_CLOSED_FORM = 2;
+    final static int  HEADER_BYTES     = 48;
+
+    private BezierFile() {
+    }
+
+    /**
+     * Writes the current version of a curve, along with the inversion method
+     * and solver tolerance it's evaluated with
+     * 
+     * @param bezier
+     *            The curve to write
+     * @param path
+     *            The file to write, which is replaced if it exists
+     * @param includeCoeffs
+     *            Whether to store each span's coefficients and extrema, which
+     *            map needs in order to evaluate the curve from the file
+     */
+    public static void write(Bezier bezier, Path path, boolean includeCoeffs) throws IOException {
+        CompiledCurve curve = bezier.getCompiledCurve();
+        int spanCount = curve.getSpanCount();
+        int ptCount = spanCount == 0 ? 0 : spanCount * 3 + 1;
+        long size = fileSize(spanCount, ptCount, includeCoeffs);
+        if (size > Integer.MAX_VALUE)
+            throw new IOException(spanCount + " spans need " + size + " bytes, more than a single mapping can hold");
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC);
+            buf.putInt(FORMAT_VERSION);
+            int flags = includeCoeffs ? FLAG_COEFFS : 0;
+            if (curve.getInversion() == Bezier.Inversion.CLOSED_FORM)
+                flags |= FLAG_CLOSED_FORM;
+            buf.putInt(flags);
+            buf.putInt(spanCount);
+            buf.putInt(ptCount);
+            buf.putInt(0);
+            buf.putDouble(curve.getMinY());
+            buf.putDouble(curve.getMaxY());
+            buf.putDouble(curve.getSolverTolerance());
+
+            for (int i = 0; i < spanCount; i++) {
+                Bezier.Span span = curve.getSpan(i);
+
+                // Spans share their end knots, so only the last span writes
+                // its final point
+                int count = i == spanCount - 1 ? 4 : 3;
+                for (int j = 0; j < count; j++) {
+                    Point2D pt = span.getCtrlPt(j);
+                    buf.putDouble(pt.x());
+                    buf.putDouble(pt.y());
+                }
+            }
+
+            if (includeCoeffs) {
+                for (int i = 0; i < spanCount; i++) {
+                    Bezier.Span span = curve.getSpan(i);
+                    for (int k = 0; k < Bezier.COEFFS_PER_SPAN; k++) {
+                        buf.putDouble(span.getCoeff(k));
+                    }
+                }
+                for (int i = 0; i < spanCount; i++) {
+                    Bezier.Span span = curve.getSpan(i);
+                    buf.putDouble(span.getMinY());
+                    buf.putDouble(span.getMaxY());
+                }
+            }
+            buf.force();
+        }
+    }
+
+    /**
+     * Reads a curve into a new Bezier that can be edited
+     * 
+     * @param path
+     *            The file to read
+     * @return
+     *         A Bezier with the control points, inversion and solver
+     *         tolerance stored in the file
+     * @throws IOException
+     *             If the file can't be read, or its control points fail the
+     *             checks in Bezier.validateCtrlPts
+     */
+    public static Bezier read(Path path) throws IOException {
+        ByteBuffer buf = mapFile(path);
+        int ptCount = buf.getInt(16);
+        List<Point2D> pts = new ArrayList<Point2D>(ptCount);
+        for (int i = 0; i < ptCount; i++) {
+            int offset = HEADER_BYTES + i * 16;
+            pts.add(new Point2D(buf.getDouble(offset), buf.getDouble(offset + 8)));
+        }
+
+        // An empty curve is written with no points at all
+        if (ptCount != 0) {
+            try {
+                Bezier.validateCtrlPts(pts);
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException(path + " is corrupt: " + e.getMessage(), e);
+            }
+        }
+        Bezier ret = new Bezier();
+        ret.setInversion(inversion(buf));
+        ret.setSolverTolerance(solverTolerance(path, buf));
+        ret.setCtrlPts(pts);
+        return ret;
+    }
+
+    /**
+     * Maps a curve for evaluation in place. Nothing is copied onto the heap,
+     * so opening even a very large curve only costs the mapping itself, and
+     * pages are read in as queries touch them.
+     * 
+     * @param path
+     *            A file written with coefficients
+     * @return
+     *         A read-only view of the curve in the file
+     */
+    public static MappedCurve map(Path path) throws IOException {
+        ByteBuffer buf = mapFile(path);
+        if ((buf.getInt(8) & FLAG_COEFFS) == 0)
+            throw new IOException(path + " has no coefficients to evaluate from");
+        MappedCurve ret = new MappedCurve(buf);
+        ret.setInversion(inversion(buf));
+        ret.setSolverTolerance(solverTolerance(path, buf));
+        return ret;
+    }
+
+    private static Bezier.Inversion inversion(ByteBuffer buf) {
+        return (buf.getInt(8) & FLAG_CLOSED_FORM) != 0 ? Bezier.Inversion.CLOSED_FORM : Bezier.Inversion.NEWTON;
+    }
+
+    private static double solverTolerance(Path path, ByteBuffer buf) throws IOException {
+        double ret = buf.getDouble(40);
+        if (!(ret > 0) || Double.isInfinite(ret))
+            throw new IOException(path + " has invalid solver tolerance " + ret);
+        return ret;
+    }
+
+    /**
+     * Maps a file and checks its header against its size
+     */
+    private static ByteBuffer mapFile(Path path) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES)
+                throw new IOException(path + " is too short to be a curve file");
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(path + " is larger than a single mapping can hold");
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buf.getInt(0) != MAGIC)
+            throw new IOException(path + " is not a curve file");
+        int version = buf.getInt(4);
+        if (version != FORMAT_VERSION)
+            throw new IOException(path + " has unsupported format version " + version);
+
+        int spanCount = buf.getInt(12);
+        int ptCount = buf.getInt(16);
+        boolean coeffs = (buf.getInt(8) & FLAG_COEFFS) != 0;
+        if (spanCount < 0 || ptCount != (spanCount == 0 ? 0 : spanCount * 3 + 1)
+                || buf.capacity() != fileSize(spanCount, ptCount, coeffs))
+            throw new IOException(path + " is truncated or corrupt");
+        return buf;
+    }
+
+    private static long fileSize(int spanCount, int ptCount, boolean includeCoeffs) {
+        long size = HEADER_BYTES + (long) ptCount * 16;
+        if (includeCoeffs)
+            size += (long) spanCount * (Bezier.COEFFS_PER_SPAN + 2) * 8;
+        return size;
+    }
+}
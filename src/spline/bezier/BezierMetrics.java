@@ -0,0 +1,200 @@
+package spline.bezier;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what a Bezier's evaluation paths do: how many point queries are made
+ * and against which spans, how many fall outside the curve, how many Newton
+ * iterations each X to t inversion takes and how often it gives up, and how
+ * long rebuilds take. Counters are striped LongAdders, so threads recording
+ * at once don't contend, even when they all hit the same span. Each span's
+ * counter is created the first time the span is hit. A Bezier only records
+ * while metrics are enabled, and costs a null check per query otherwise.
+ */
+public class BezierMetrics implements BezierMetricsMXBean {
+
+    private final static VarHandle SPAN_COUNTER  = MethodHandles.arrayElementVarHandle(LongAdder[].class);
+
+    private final LongAdder        evaluations   = new LongAdder();
+    private final LongAdder        outOfRange    = new LongAdder();
+    private final LongAdder        solves        = new LongAdder();
+    private final LongAdder        nonConverged  = new LongAdder();
+    private final LongAdder        iterations    = new LongAdder();
+    private final LongAdder[]      iterationCounts;
+    private final LongAdder        rebuilds      = new LongAdder();
+    private final LatencyHistogram rebuildNanos  = new LatencyHistogram();
+
+    // Sized to the span count of the last rebuild, with null for the spans
+    // not yet hit
+    private volatile LongAdder[]   spanEvaluations;
+
+    private ObjectName             registeredName;
+
+    BezierMetrics(int spanCount) {
+        iterationCounts = new LongAdder[RootSolver.ITERATION_LIMIT + 1];
+        for (int i = 0; i < iterationCounts.length; i++) {
+            iterationCounts[i] = new LongAdder();
+        }
+        spanEvaluations = new LongAdder[spanCount];
+    }
+
+    /**
+     * @param span
+     *            The span a point query landed in, or -1 if it was outside of
+     *            the curve
+     */
+    void recordEvaluation(int span) {
+        evaluations.increment();
+        if (span < 0) {
+            outOfRange.increment();
+            return;
+        }
+        LongAdder[] counts = spanEvaluations;
+        if (span >= counts.length)
+            return;
+        LongAdder counter = (LongAdder) SPAN_COUNTER.getAcquire(counts, span);
+        if (counter == null)
+            counter = newSpanCounter(counts, span);
+        counter.increment();
+    }
+
+    /**
+     * @return
+     *         The counter for a span, created by this thread or whichever
+     *         thread got there first
+     */
+    private static LongAdder newSpanCounter(LongAdder[] counts, int span) {
+        LongAdder created = new LongAdder();
+        LongAdder existing = (LongAdder) SPAN_COUNTER.compareAndExchange(counts, span, null, created);
+        return existing != null ? existing : created;
+    }
+
+    void recordSolve(int iterationCount, boolean converged) {
+        solves.increment();
+        iterations.add(iterationCount);
+        iterationCounts[Math.min(iterationCount, iterationCounts.length - 1)].increment();
+        if (!converged)
+            nonConverged.increment();
+    }
+
+    void recordRebuild(int spanCount, long nanos) {
+        rebuilds.increment();
+        rebuildNanos.record(nanos);
+        if (spanEvaluations.length != spanCount)
+            spanEvaluations = new LongAdder[spanCount];
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server
+     * 
+     * @param name
+     *            A name to tell this curve's metrics apart from others
+     * @return
+     *         The name the metrics were registered under
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        unregister();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("spline.bezier:type=BezierMetrics,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+        registeredName = objectName;
+        return objectName;
+    }
+
+    public synchronized void unregister() throws JMException {
+        if (registeredName == null)
+            return;
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        registeredName = null;
+    }
+
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    public long getOutOfRange() {
+        return outOfRange.sum();
+    }
+
+    public long getSolves() {
+        return solves.sum();
+    }
+
+    public long getNonConverged() {
+        return nonConverged.sum();
+    }
+
+    public double getMeanIterations() {
+        long count = solves.sum();
+        return count == 0 ? 0 : (double) iterations.sum() / count;
+    }
+
+    public long[] getIterationHistogram() {
+        long[] ret = new long[iterationCounts.length];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = iterationCounts[i].sum();
+        }
+        return ret;
+    }
+
+    public long getRebuilds() {
+        return rebuilds.sum();
+    }
+
+    public long getRebuildNanosP50() {
+        return rebuildNanos.getPercentile(50);
+    }
+
+    public long getRebuildNanosP99() {
+        return rebuildNanos.getPercentile(99);
+    }
+
+    public long getRebuildNanosMax() {
+        return rebuildNanos.getMax();
+    }
+
+    public int getHottestSpan() {
+        LongAdder[] counts = spanEvaluations;
+        int ret = -1;
+        long best = 0;
+        for (int i = 0; i < counts.length; i++) {
+            long count = spanCount(counts, i);
+            if (count > best) {
+                best = count;
+                ret = i;
+            }
+        }
+        return ret;
+    }
+
+    public long getSpanEvaluations(int span) {
+        LongAdder[] counts = spanEvaluations;
+        return span >= 0 && span < counts.length ? spanCount(counts, span) : 0;
+    }
+
+    private static long spanCount(LongAdder[] counts, int span) {
+        LongAdder counter = (LongAdder) SPAN_COUNTER.getAcquire(counts, span);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    public void reset() {
+        evaluations.reset();
+        outOfRange.reset();
+        solves.reset();
+        nonConverged.reset();
+        iterations.reset();
+        for (LongAdder counter : iterationCounts) {
+            counter.reset();
+        }
+        rebuilds.reset();
+        rebuildNanos.reset();
+        spanEvaluations = new LongAdder[spanEvaluations.length];
+    }
+}
@@ -0,0 +1,51 @@
+package spline.bezier;
+
+/**
+ * The JMX view of a Bezier's evaluation metrics
+ */
+public interface BezierMetricsMXBean {
+
+    long getEvaluations();
+
+    long getOutOfRange();
+
+    long getSolves();
+
+    long getNonConverged();
+
+    double getMeanIterations();
+
+    /**
+     * @return
+     *         The number of solves that took each iteration count, indexed by
+     *         iterations
+     */
+    long[] getIterationHistogram();
+
+    long getRebuilds();
+
+    long getRebuildNanosP50();
+
+    long getRebuildNanosP99();
+
+    long getRebuildNanosMax();
+
+    /**
+     * @return
+     *         The span evaluated most often since the metrics were enabled or
+     *         reset, or -1. The per span counts are also cleared by a rebuild
+     *         that changes the number of spans, since the old indices no
+     *         longer name the same spans. A rebuild that keeps the span count,
+     *         such as moving a control point, keeps them.
+     */
+    int getHottestSpan();
+
+    /**
+     * @return
+     *         The point queries that landed in a span, counted over the same
+     *         period as getHottestSpan
+     */
+    long getSpanEvaluations(int span);
+
+    void reset();
+}
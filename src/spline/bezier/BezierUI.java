@@ -1,41 +1,91 @@
 package spline.bezier;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.geom.CubicCurve2D;
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import math.geom2d.Point2D;
 import spline.mvc.View;
 
 public class BezierUI extends View {
-    List<Point2D> splinePts = new ArrayList<Point2D>();
     List<Point2D> ctrlPts   = new ArrayList<Point2D>();
     List<Point2D> sp        = new ArrayList<Point2D>();
     int           minX, maxX, minY, maxY;
     boolean       scaled;
-    int           curvePtCount;
     Bezier        model;
     final int     PT_RAD    = 5;
+    final int     SPAN_INC  = 3;
     int           selectedPt;
 
+    // The curve and control points are drawn from a cached image, rebuilt
+    // only when the model, the display range or the panel size changes. While
+    // a point is dragged the image leaves out the spans that share it, which
+    // are drawn live instead. Otherwise the whole curve is drawn as one
+    // polyline from the tessellator, to within TESS_PX of the true curve.
+    BufferedImage curveImage;
+    boolean       curveDirty = true;
+    int           dragFirst, dragLast;
+    CubicCurve2D  curve      = new CubicCurve2D.Double();
+    final double  TESS_PX    = 0.25;
+    Polyline      outline    = new Polyline();
+    Path2D        path       = new Path2D.Double();
+    Ellipse2D     marker     = new Ellipse2D.Double();
+
+    // Screen space index of the scaled control points, for picking, hover and
+    // rubber band selection
+    PointGrid     grid       = new PointGrid();
+    boolean       gridDirty  = true;
+    int           hoverPt    = -1;
+    BitSet        selection  = new BitSet();
+    Rectangle     band;
+    int           bandX, bandY;
+    int           gridWidth, gridHeight;
+
     BezierUI() {
         addMouseMotionListener(new MouseMotionAdapter() {
             @Override
             public void mouseDragged(MouseEvent e) {
-                if (selectedPt < 0)
+                if (band != null) {
+                    Rectangle dirty = new Rectangle(band);
+                    band.setFrameFromDiagonal(bandX, bandY, e.getX(), e.getY());
+                    dirty.add(band);
+                    dirty.grow(1, 1);
+                    repaint(dirty);
+                }
+                else if (selectedPt < 0)
                     return;
                 else {
+                    // Repaint only the area covered by the dragged spans before
+                    // and after the move
+                    Rectangle dirty = dragBounds();
                     Point2D thisPt = new Point2D(e.getX(), e.getY());
                     sp.set(selectedPt, thisPt);
-                    repaint();
+                    dirty.add(dragBounds());
+                    repaint(dirty);
+                }
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                int pt = onCtrlPt(e);
+                if (pt != hoverPt) {
+                    repaintMarker(hoverPt);
+                    hoverPt = pt;
+                    repaintMarker(hoverPt);
                 }
             }
         });
@@ -44,20 +94,52 @@ public class BezierUI extends View {
             public void mousePressed(MouseEvent e) {
                 selectedPt = onCtrlPt(e);
                 System.out.println("Selected point " + selectedPt);
+                if (selectedPt < 0) {
+                    // Start a rubber band selection on empty space
+                    bandX = e.getX();
+                    bandY = e.getY();
+                    band = new Rectangle(bandX, bandY, 0, 0);
+                    selection.clear();
+                    repaint();
+                }
+                else {
+                    // Take the dragged spans out of the cached path
+                    int spanCount = model.getSpans().size();
+                    dragFirst = selectedPt % SPAN_INC == 0 && selectedPt > 0 ? selectedPt / SPAN_INC - 1
+                            : selectedPt / SPAN_INC;
+                    dragLast = Math.min(selectedPt / SPAN_INC, spanCount - 1);
+                    curveDirty = true;
+                    repaint();
+                }
             }
 
             @Override
             public void mouseReleased(MouseEvent arg0) {
-                ctrlPts.clear();
-                for (Point2D p : sp) {
-                    ctrlPts.add(unscalePoint(p));
+                if (band != null) {
+                    if (gridDirty)
+                        rescaleCtrlPts();
+                    grid.query(band.getMinX(), band.getMinY(), band.getMaxX(), band.getMaxY(), selection);
+                    band = null;
+                    repaint();
+                    return;
                 }
-                model.setCtrlPts(ctrlPts);
+                if (selectedPt < 0)
+                    return;
+                int moved = selectedPt;
                 selectedPt = -1;
+                curveDirty = true;
+                // Keep the point between its neighbors in X, which the model
+                // requires
+                Point2D p = unscalePoint(sp.get(moved));
+                double x = p.x();
+                if (moved > 0)
+                    x = Math.max(x, ctrlPts.get(moved - 1).x());
+                if (moved + 1 < ctrlPts.size())
+                    x = Math.min(x, ctrlPts.get(moved + 1).x());
+                model.moveCtrlPt(moved, x, p.y());
             }
         });
         scaled = false;
-        curvePtCount = 200;
         minX = -10;
         maxX = 110;
         minY = -10;
@@ -66,17 +148,41 @@ public class BezierUI extends View {
     }
 
     private int onCtrlPt(MouseEvent e) {
-        double dist;
-        int index = 0;
+        if (gridDirty || getWidth() != gridWidth || getHeight() != gridHeight)
+            rescaleCtrlPts();
+        return grid.nearest(e.getX(), e.getY(), PT_RAD);
+    }
+
+    /**
+     * Rescales the control points to the window and rebuilds the hit testing
+     * grid from them
+     */
+    private void rescaleCtrlPts() {
+        sp.clear();
         for (Point2D p : ctrlPts) {
-            Point2D ps = scalePoint(p);
-            dist = Math.sqrt(Math.pow((e.getX() - ps.x()), 2) + Math.pow((e.getY() - ps.y()), 2));
-            if (dist <= PT_RAD) {
-                return index;
-            }
-            index++;
+            sp.add(scalePoint(p));
         }
-        return -1;
+        grid.build(sp, getWidth(), getHeight(), PT_RAD * 4);
+        gridDirty = false;
+        gridWidth = getWidth();
+        gridHeight = getHeight();
+    }
+
+    private void repaintMarker(int index) {
+        if (index < 0 || index >= sp.size())
+            return;
+        Point2D p = sp.get(index);
+        int size = PT_RAD * 2 + 4;
+        repaint((int) p.x() - PT_RAD - 2, (int) p.y() - PT_RAD - 2, size, size);
+    }
+
+    /**
+     * @return
+     *         The indices of the control points chosen by the last rubber band
+     *         selection
+     */
+    public BitSet getSelection() {
+        return selection;
     }
 
     public int getMinX() {
@@ -85,6 +191,8 @@ public class BezierUI extends View {
 
     public void setMinX(int minX) {
         this.minX = minX;
+        curveDirty = true;
+        gridDirty = true;
         repaint();
     }
 
@@ -94,6 +202,8 @@ public class BezierUI extends View {
 
     public void setMaxX(int maxX) {
         this.maxX = maxX;
+        curveDirty = true;
+        gridDirty = true;
         repaint();
     }
 
@@ -103,6 +213,8 @@ public class BezierUI extends View {
 
     public void setMinY(int minY) {
         this.minY = minY;
+        curveDirty = true;
+        gridDirty = true;
         repaint();
     }
 
@@ -112,6 +224,8 @@ public class BezierUI extends View {
 
     public void setMaxY(int maxY) {
         this.maxY = maxY;
+        curveDirty = true;
+        gridDirty = true;
         repaint();
     }
 
@@ -138,15 +252,128 @@ public class BezierUI extends View {
     @Override
     public void update() {
         model = (Bezier) super.getModel();
-        if (scaled)
-            splinePts = model.getScaledCurvePoints(curvePtCount);
-        else {
-            splinePts = model.getCurvePoints(curvePtCount);
+        if (!scaled)
             ctrlPts = model.getCtrlPts();
-        }
+        curveDirty = true;
+        gridDirty = true;
         repaint();
     }
 
+    /**
+     * Rescales the control points to the window, unless one is being dragged,
+     * and redraws the cached curve image from them
+     */
+    private void rebuildCurveImage() {
+        if (selectedPt < 0)
+            rescaleCtrlPts();
+
+        int width = Math.max(1, getWidth());
+        int height = Math.max(1, getHeight());
+        if (curveImage == null || curveImage.getWidth() != width || curveImage.getHeight() != height) {
+            if (getGraphicsConfiguration() != null)
+                curveImage = getGraphicsConfiguration().createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+            else
+                curveImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        Graphics2D g2 = curveImage.createGraphics();
+        g2.setComposite(AlphaComposite.Clear);
+        g2.fillRect(0, 0, width, height);
+        g2.setComposite(AlphaComposite.SrcOver);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setColor(Color.BLACK);
+
+        if (selectedPt < 0)
+            drawOutline(g2, width, height);
+        else {
+            int spanCount = Math.min(model.getSpans().size(), (sp.size() - 1) / SPAN_INC);
+            for (int i = 0; i < spanCount; i++) {
+                if (!isDragged(i))
+                    drawSpan(g2, i);
+            }
+        }
+        for (int i = 0; i < sp.size(); i++) {
+            if (!isDragged(i / SPAN_INC) && !(i % SPAN_INC == 0 && isDragged(i / SPAN_INC - 1)))
+                drawMarker(g2, sp.get(i));
+        }
+        g2.dispose();
+
+        curveDirty = false;
+    }
+
+    private boolean isDragged(int span) {
+        return selectedPt >= 0 && span >= dragFirst && span <= dragLast;
+    }
+
+    private void drawSpan(Graphics2D g2, int span) {
+        Point2D p0 = sp.get(SPAN_INC * span);
+        Point2D p1 = sp.get(1 + SPAN_INC * span);
+        Point2D p2 = sp.get(2 + SPAN_INC * span);
+        Point2D p3 = sp.get(3 + SPAN_INC * span);
+        curve.setCurve(p0.x(), p0.y(), p1.x(), p1.y(), p2.x(), p2.y(), p3.x(), p3.y());
+        g2.draw(curve);
+    }
+
+    /**
+     * Draws the whole curve as a polyline from the tessellator. The tolerance
+     * is TESS_PX on the screen axis with the most pixels per curve unit, which
+     * keeps the polyline within TESS_PX of the curve on both axes.
+     */
+    private void drawOutline(Graphics2D g2, int width, int height) {
+        double tolerance = TESS_PX * Math.min((double) rangeX() / width, (double) rangeY() / height);
+        outline.clear();
+        model.tessellate(tolerance, false, outline);
+        if (outline.size() == 0)
+            return;
+
+        path.reset();
+        for (int i = 0; i < outline.size(); i++) {
+            double x = (outline.getX(i) - minX) / rangeX() * width;
+            double y = (1.0 - (outline.getY(i) - minY) / rangeY()) * height;
+            if (i == 0)
+                path.moveTo(x, y);
+            else
+                path.lineTo(x, y);
+        }
+        g2.draw(path);
+    }
+
+    private void drawMarker(Graphics2D g2, Point2D p) {
+        int dia = PT_RAD * 2;
+        marker.setFrame(p.x() - PT_RAD, p.y() - PT_RAD, dia, dia);
+        g2.draw(marker);
+    }
+
+    private void fillMarker(Graphics2D g2, Point2D p) {
+        int dia = PT_RAD * 2;
+        marker.setFrame(p.x() - PT_RAD, p.y() - PT_RAD, dia, dia);
+        g2.fill(marker);
+    }
+
+    /**
+     * @return
+     *         The screen area covered by the spans being dragged, including
+     *         their control point markers. A span lies inside the bounding box
+     *         of its control points.
+     */
+    private Rectangle dragBounds() {
+        double x0 = Double.MAX_VALUE;
+        double y0 = Double.MAX_VALUE;
+        double x1 = -Double.MAX_VALUE;
+        double y1 = -Double.MAX_VALUE;
+        int last = Math.min(SPAN_INC * (dragLast + 1), sp.size() - 1);
+        for (int i = SPAN_INC * dragFirst; i <= last; i++) {
+            Point2D p = sp.get(i);
+            x0 = Math.min(x0, p.x());
+            y0 = Math.min(y0, p.y());
+            x1 = Math.max(x1, p.x());
+            y1 = Math.max(y1, p.y());
+        }
+        int margin = PT_RAD + 2;
+        return new Rectangle((int) Math.floor(x0) - margin, (int) Math.floor(y0) - margin,
+                (int) Math.ceil(x1 - x0) + 2 * margin, (int) Math.ceil(y1 - y0) + 2 * margin);
+    }
+
     @Override
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
@@ -155,85 +382,35 @@ public class BezierUI extends View {
                 RenderingHints.VALUE_ANTIALIAS_ON);
         g2.setColor(Color.BLACK);
 
-        if (splinePts.size() < 2)
+        if (model == null || model.getCompiledCurve().getSpanCount() == 0)
             return;
 
-        // Re-scale the spline to fit the window
-        List<Point2D> paintPts = new ArrayList<Point2D>();
-
-        // If starting with scaled values, fit to the window...
-        if (scaled) {
-            for (Point2D p : splinePts) {
-                double x = p.x() * this.getWidth();
-                double y = (1.0 - p.y()) * this.getHeight();
-                paintPts.add(new Point2D(x, y));
-            }
-        }
-        // ...otherwise fit the values to the display range
-        else {
-            for (Point2D p : splinePts) {
-                paintPts.add(scalePoint(p));
-            }
-        }
-
-        // // Paint the spline points
-        // Point2D p0 = paintPts.get(0);
-        // Point2D p1 = paintPts.get(1);
-        //
-        // for (Point2D p : paintPts) {
-        // System.out.println(p);
-        // }
-        //
-        // for (int i = 1; i < splinePts.size(); i++) {
-        // int x1 = (int) Math.round(p0.x());
-        // int y1 = (int) Math.round(p0.y());
-        // int x2 = (int) Math.round(p1.x());
-        // int y2 = (int) Math.round(p1.y());
-        // g2.drawLine(x1, y1, x2, y2);
-        //
-        // if (i < splinePts.size() - 1) {
-        // p0 = p1;
-        // p1 = paintPts.get(i + 1);
-        // }
-        // }
-
         // If this isn't a scaled curve, paint the control points
         if (!scaled) {
-
-            // If not point is selected, update from the model
-            if (selectedPt == -1) {
-                sp = new ArrayList<Point2D>(); // The scaled control points
-                for (Point2D p : ctrlPts) {
-                    Point2D ps = scalePoint(p);
-                    sp.add(ps);
+            if (curveDirty || curveImage == null || curveImage.getWidth() != getWidth()
+                    || curveImage.getHeight() != getHeight())
+                rebuildCurveImage();
+            g2.drawImage(curveImage, 0, 0, null);
+
+            // Draw the spans being dragged from their current control points
+            if (selectedPt >= 0) {
+                for (int i = dragFirst; i <= dragLast; i++) {
+                    drawSpan(g2, i);
+                }
+                int last = Math.min(SPAN_INC * (dragLast + 1), sp.size() - 1);
+                for (int i = SPAN_INC * dragFirst; i <= last; i++) {
+                    drawMarker(g2, sp.get(i));
                 }
             }
 
-            for (Point2D p : sp) {
-                int dia = PT_RAD * 2;
-                g2.draw(new Ellipse2D.Double(p.x() - PT_RAD, p.y() - PT_RAD, dia, dia));
-            }
-
-            int spanCount = model.getSpans().size();
-            final int SPAN_INC = 3;
-            for (int i = 0; i < spanCount; i++) {
-                // create new CubicCurve2D.Double
-                CubicCurve2D c = new CubicCurve2D.Double();
-                // draw CubicCurve2D.Double with set coordinates
-                double x0 = sp.get(0 + SPAN_INC * i).x();
-                double y0 = sp.get(0 + SPAN_INC * i).y();
-
-                double x1 = sp.get(1 + SPAN_INC * i).x();
-                double y1 = sp.get(1 + SPAN_INC * i).y();
-
-                double x2 = sp.get(2 + SPAN_INC * i).x();
-                double y2 = sp.get(2 + SPAN_INC * i).y();
-
-                double x3 = sp.get(3 + SPAN_INC * i).x();
-                double y3 = sp.get(3 + SPAN_INC * i).y();
-                c.setCurve(x0, y0, x1, y1, x2, y2, x3, y3);
-                g2.draw(c);
+            // Highlight the hovered and selected points
+            for (int i = selection.nextSetBit(0); i >= 0 && i < sp.size(); i = selection.nextSetBit(i + 1)) {
+                fillMarker(g2, sp.get(i));
             }
+            if (hoverPt >= 0 && hoverPt < sp.size())
+                fillMarker(g2, sp.get(hoverPt));
+            if (band != null)
+                g2.draw(band);
         }
 
         // Draw a border around everything
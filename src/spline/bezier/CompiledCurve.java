@@ -0,0 +1,470 @@
+package spline.bezier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import math.geom2d.Point2D;
+
+/**
+ * An immutable copy of a Bezier's spans and lookup index. A Bezier publishes
+ * a new one each time its control points change, so a reader holding a
+ * CompiledCurve always sees one consistent version of the curve without
+ * locking, however the curve is edited in the meantime.
+ */
+public final class CompiledCurve {
+
+    // How many spans evaluateAtX steps forward before searching instead
+    private final static int                MAX_WALK = 2;
+
+    final SpanTable                         spans;
+    private final long                      version;
+
+    // Settings copied from the Bezier when this snapshot was published
+    private final boolean                   cursorEnabled;
+    private final Bezier.Inversion          inversion;
+    private final double                    solverTolerance;
+    private final LookupTable.Interpolation lutMode;
+    private final double                    lutMaxError;
+    private final BezierMetrics             metrics;
+    private final ResultCache               cache;
+
+    // Hint only. Threads sharing a snapshot may overwrite each other's
+    // cursor, which costs a binary search but never gives a wrong answer.
+    private int                             lastSpanHit;
+    private volatile LookupTable            lut;
+    private volatile SpanBounds             bounds;
+    private volatile ArcLengthTable         arcLength;
+
+    /**
+     * @param spans
+     *            The spans of the curve
+     * @param version
+     *            The version of the control points the spans were built from
+     * @param cursorEnabled
+     *            Whether lookups try the last span hit before searching
+     * @param inversion
+     *            How the spans invert X to t
+     * @param solverTolerance
+     *            The change in t below which the Newton inversion is
+     *            considered converged
+     * @param lutMode
+     *            How to interpolate the lookup table, or null to solve every
+     *            query exactly
+     * @param lutMaxError
+     *            The largest acceptable lookup table position error
+     * @param metrics
+     *            Where to count point queries, or null to not count them
+     * @param cache
+     *            Where to cache point query results, or null to not cache
+     *            them. Ignored when the lookup table is enabled.
+     */
+    CompiledCurve(SpanTable spans, long version, boolean cursorEnabled, Bezier.Inversion inversion,
+            double solverTolerance, LookupTable.Interpolation lutMode, double lutMaxError, BezierMetrics metrics,
+            ResultCache cache) {
+        this.spans = spans;
+        this.version = version;
+        this.cursorEnabled = cursorEnabled;
+        this.inversion = inversion;
+        this.solverTolerance = solverTolerance;
+        this.lutMode = lutMode;
+        this.lutMaxError = lutMaxError;
+        this.metrics = metrics;
+        this.cache = lutMode == null ? cache : null;
+    }
+
+    /**
+     * @return
+     *         A number that increases every time the Bezier's control points
+     *         or solver settings change, so two snapshots with the same
+     *         version give the same answers
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getSpanCount() {
+        return spans.size();
+    }
+
+    public double positionAtX(double x) {
+        if (cache != null)
+            return cache.evaluate(this, x, ResultCache.POSITION);
+        int index = spanIndexContainingX(x);
+        if (metrics != null)
+            metrics.recordEvaluation(index);
+        if (index >= 0)
+            return positionInSpan(index, x);
+        else
+            return Bezier.ERROR;
+    }
+
+    void recordEvaluation(int index) {
+        if (metrics != null)
+            metrics.recordEvaluation(index);
+    }
+
+    /**
+     * @return
+     *         The metrics this snapshot records to, or null
+     */
+    BezierMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return
+     *         The inversion method the Bezier had when this snapshot was
+     *         published
+     */
+    public Bezier.Inversion getInversion() {
+        return inversion;
+    }
+
+    /**
+     * @return
+     *         The solver tolerance the Bezier had when this snapshot was
+     *         published
+     */
+    public double getSolverTolerance() {
+        return solverTolerance;
+    }
+
+    /**
+     * Inverts X to t on one of this snapshot's spans with this snapshot's
+     * inversion method and tolerance, so a setting changed on the Bezier
+     * afterwards doesn't change the answer
+     */
+    double tOfX(Bezier.Span span, double x, double guess) {
+        return span.tOfX(x, guess, inversion, solverTolerance, metrics);
+    }
+
+    double positionInSpan(int index, double x) {
+        if (lutMode != null)
+            return getLookupTable().positionAtX(index, x);
+        else
+            return spans.get(index).solveCubic(tOfX(spans.get(index), x, Bezier.Span.NO_GUESS), false);
+    }
+
+    public double velocityAtX(double x) {
+        if (cache != null)
+            return cache.evaluate(this, x, ResultCache.VELOCITY);
+        int index = spanIndexContainingX(x);
+        if (metrics != null)
+            metrics.recordEvaluation(index);
+        if (index < 0)
+            return Bezier.ERROR;
+        if (lutMode != null)
+            return getLookupTable().velocityAtX(index, x);
+        return spans.get(index).velocityAtT(tOfX(spans.get(index), x, Bezier.Span.NO_GUESS));
+    }
+
+    public double accelAtX(double x) {
+        if (cache != null)
+            return cache.evaluate(this, x, ResultCache.ACCEL);
+        int index = spanIndexContainingX(x);
+        if (metrics != null)
+            metrics.recordEvaluation(index);
+        if (index < 0)
+            return Bezier.ERROR;
+        if (lutMode != null)
+            return getLookupTable().accelAtX(index, x);
+        return spans.get(index).accelAtT(tOfX(spans.get(index), x, Bezier.Span.NO_GUESS));
+    }
+
+    /**
+     * @see Bezier#evaluateAtX(double[], double[], double[], double[])
+     */
+    public void evaluateAtX(double[] xs, double[] positions, double[] velocities, double[] accels) {
+        LookupTable table = lutMode != null ? getLookupTable() : null;
+        int count = spans.size();
+        int index = -1;
+        double t = Bezier.Span.NO_GUESS;
+
+        for (int i = 0; i < xs.length; i++) {
+            double x = xs[i];
+
+            // Step forward a span or two for sorted input, falling back to a
+            // binary search for a longer jump or an X value behind the
+            // current span
+            if (index < 0 || !spans.get(index).containsX(x)) {
+                for (int step = 0; step < MAX_WALK && index >= 0 && index < count - 1
+                        && x > spans.get(index).getStopX(); step++)
+                    index++;
+                if (index < 0 || !spans.get(index).containsX(x))
+                    index = spanIndexContainingX(x);
+                t = Bezier.Span.NO_GUESS;
+            }
+            if (metrics != null)
+                metrics.recordEvaluation(index);
+
+            if (index < 0) {
+                if (positions != null)
+                    positions[i] = Bezier.ERROR;
+                if (velocities != null)
+                    velocities[i] = Bezier.ERROR;
+                if (accels != null)
+                    accels[i] = Bezier.ERROR;
+                continue;
+            }
+
+            // Answer from the table as the point queries do, so the two
+            // agree exactly
+            if (table != null) {
+                if (positions != null)
+                    positions[i] = table.positionAtX(index, x);
+                if (velocities != null)
+                    velocities[i] = table.velocityAtX(index, x);
+                if (accels != null)
+                    accels[i] = table.accelAtX(index, x);
+                continue;
+            }
+
+            // Seed the solve with the previous t, which will be close for
+            // densely sampled input
+            Bezier.Span span = spans.get(index);
+            t = tOfX(span, x, t);
+            if (positions != null)
+                positions[i] = span.solveCubic(t, false);
+            if (velocities != null)
+                velocities[i] = span.velocityAtT(t);
+            if (accels != null)
+                accels[i] = span.accelAtT(t);
+        }
+    }
+
+    /**
+     * @see Bezier#xAtY(double, double)
+     */
+    public double xAtY(double y, double fromX) {
+        if (spans.size() == 0 || fromX > getStopX())
+            return Bezier.ERROR;
+        int first = fromX <= getStartX() ? 0 : spanIndexOwning(fromX);
+        double fromT = fromX <= getStartX() ? 0 : tOfX(spans.get(first), fromX, Bezier.Span.NO_GUESS);
+
+        SpanBounds spanBounds = getSpanBounds();
+        double[] ts = new double[3];
+        int last = spans.size() - 1;
+        for (int i = spanBounds.firstReachingY(y, first, last); i >= 0; i = spanBounds.firstReachingY(y, i + 1,
+                last)) {
+            Bezier.Span span = spans.get(i);
+            if (span.tsOfY(y, i == first ? fromT : 0, 1, ts, solverTolerance) > 0)
+                return span.solveCubic(ts[0], true);
+        }
+        return Bezier.ERROR;
+    }
+
+    /**
+     * @see Bezier#firstXWhereVelocityExceeds(double, double)
+     */
+    public double firstXWhereVelocityExceeds(double v, double fromX) {
+        if (spans.size() == 0 || fromX > getStopX())
+            return Bezier.ERROR;
+        int first = fromX <= getStartX() ? 0 : spanIndexOwning(fromX);
+        double fromT = fromX <= getStartX() ? 0 : tOfX(spans.get(first), fromX, Bezier.Span.NO_GUESS);
+
+        SpanBounds spanBounds = getSpanBounds();
+        int last = spans.size() - 1;
+        for (int i = spanBounds.firstVelocityAbove(v, first, last); i >= 0; i = spanBounds.firstVelocityAbove(v,
+                i + 1, last)) {
+            Bezier.Span span = spans.get(i);
+            double t = span.tWhereVelocityExceeds(v, i == first ? fromT : 0);
+            if (t != Bezier.Span.NO_GUESS)
+                return i == first && t == fromT ? Math.max(fromX, span.getStartX()) : span.solveCubic(t, true);
+        }
+        return Bezier.ERROR;
+    }
+
+    /**
+     * @see Bezier#crossingsOfY(double, double, double)
+     */
+    public double[] crossingsOfY(double y, double fromX, double toX) {
+        if (fromX > toX)
+            throw new IllegalArgumentException("fromX " + fromX + " is after toX " + toX);
+        if (spans.size() == 0 || fromX > getStopX() || toX < getStartX())
+            return new double[0];
+        int first = fromX <= getStartX() ? 0 : spanIndexOwning(fromX);
+        double fromT = fromX <= getStartX() ? 0 : tOfX(spans.get(first), fromX, Bezier.Span.NO_GUESS);
+        int last = toX >= getStopX() ? spans.size() - 1 : spanIndexOwning(toX);
+        double toT = toX >= getStopX() ? 1 : tOfX(spans.get(last), toX, Bezier.Span.NO_GUESS);
+
+        SpanBounds spanBounds = getSpanBounds();
+        double[] ts = new double[3];
+        double[] ret = new double[4];
+        int count = 0;
+        for (int i = spanBounds.firstReachingY(y, first, last); i >= 0; i = spanBounds.firstReachingY(y, i + 1,
+                last)) {
+            Bezier.Span span = spans.get(i);
+            int found = span.tsOfY(y, i == first ? fromT : 0, i == last ? toT : 1, ts, solverTolerance);
+            for (int j = 0; j < found; j++) {
+                double x = span.solveCubic(ts[j], true);
+
+                // A crossing on a knot is found by the spans on both sides
+                if (count > 0 && x <= ret[count - 1])
+                    continue;
+                if (count == ret.length)
+                    ret = Arrays.copyOf(ret, count * 2);
+                ret[count++] = x;
+            }
+        }
+        return Arrays.copyOf(ret, count);
+    }
+
+    /**
+     * @param x
+     *            The X value to look up
+     * @return
+     *         The index of the first span containing x, or -1 if x is outside
+     *         of the curve
+     */
+    int spanIndexContainingX(double x) {
+        SpanTable table = spans;
+        int count = table.size();
+        if (count == 0)
+            return -1;
+
+        // Try the last span hit and its neighbor first
+        if (cursorEnabled) {
+            int cursor = lastSpanHit;
+            Bezier.Span span = table.get(cursor);
+            if (span.containsX(x) && (cursor == 0 || x > span.getStartX()))
+                return cursor;
+            cursor++;
+            if (cursor < count) {
+                span = table.get(cursor);
+                if (span.containsX(x) && x > span.getStartX()) {
+                    lastSpanHit = cursor;
+                    return cursor;
+                }
+            }
+        }
+
+        // Written so NaN fails the range check rather than reaching the
+        // binary search
+        if (!(x >= table.getStartX(0) && x <= table.get(count - 1).getStopX()))
+            return -1;
+
+        int index = spanIndexOwning(x);
+        lastSpanHit = index;
+        return index;
+    }
+
+    /**
+     * Finds the last span starting strictly before x, so a knot shared by two
+     * spans belongs to the earlier one. Unlike spanIndexContainingX this
+     * doesn't range check x or touch the lookup cursor.
+     */
+    int spanIndexOwning(double x) {
+        return spans.indexOwning(x);
+    }
+
+    Bezier.Span getSpan(int which) {
+        return spans.get(which);
+    }
+
+    double getSpanStartX(int which) {
+        return spans.getStartX(which);
+    }
+
+    /**
+     * @return
+     *         A new list of the control points of this version of the curve,
+     *         with each shared knot listed once
+     */
+    List<Point2D> getCtrlPts() {
+        List<Point2D> ret = new ArrayList<Point2D>(spans.size() * 3 + 1);
+        for (int i = 0; i < spans.size(); i++) {
+            for (int j = i == 0 ? 0 : 1; j < 4; j++) {
+                ret.add(spans.get(i).getCtrlPt(j));
+            }
+        }
+        return ret;
+    }
+
+    boolean isLookupTableEnabled() {
+        return lutMode != null;
+    }
+
+    /**
+     * @return
+     *         The lookup table for this version of the curve, building it if
+     *         needed, or null if the lookup table mode isn't enabled
+     */
+    LookupTable getLookupTable() {
+        if (lutMode == null)
+            return null;
+
+        // Two threads may both build the table the first time, but they
+        // build the same table and either may be kept
+        LookupTable table = lut;
+        if (table == null) {
+            table = new LookupTable(this, lutMaxError, lutMode);
+            lut = table;
+        }
+        return table;
+    }
+
+    /**
+     * @return
+     *         The span bounds for this version of the curve, building them if
+     *         needed
+     */
+    SpanBounds getSpanBounds() {
+
+        // Like the lookup table, this may be built twice, harmlessly
+        SpanBounds ret = bounds;
+        if (ret == null) {
+            ret = new SpanBounds(spans.toArray());
+            bounds = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @return
+     *         The arc length table for this version of the curve, building it
+     *         if needed
+     */
+    ArcLengthTable getArcLengthTable() {
+        ArcLengthTable ret = arcLength;
+        if (ret == null) {
+            ret = new ArcLengthTable(spans.toArray());
+            arcLength = ret;
+        }
+        return ret;
+    }
+
+    /**
+     * @see Bezier#arcLengthAtX(double)
+     */
+    public double arcLengthAtX(double x) {
+        int index = spanIndexContainingX(x);
+        if (index < 0)
+            return Bezier.ERROR;
+        return getArcLengthTable().lengthAt(index, tOfX(spans.get(index), x, Bezier.Span.NO_GUESS));
+    }
+
+    double getStartX() {
+        return spans.size() != 0 ? spans.get(0).getStartX() : 0f;
+    }
+
+    double getStopX() {
+        return spans.size() != 0 ? spans.get(spans.size() - 1).getStopX() : 0f;
+    }
+
+    double getStartY() {
+        return spans.size() != 0 ? spans.get(0).getStartY() : 0f;
+    }
+
+    double getStopY() {
+        return spans.size() != 0 ? spans.get(spans.size() - 1).getStopY() : 0f;
+    }
+
+    double getMinY() {
+        return spans.getMinY();
+    }
+
+    double getMaxY() {
+        return spans.getMaxY();
+    }
+}
@@ -0,0 +1,346 @@
+package spline.bezier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import math.geom2d.Point2D;
+
+/**
+ * Reduces the number of spans in a curve by replacing runs of adjacent spans
+ * with single spans fitted over the run, for curves such as recorded
+ * trajectories that arrive with far more spans than their shape needs.
+ * 
+ * A merged span keeps the knots at the ends of its run, so the simplified
+ * curve passes through a subset of the original knots and stays continuous.
+ * Its inner control points are spaced evenly in X, which makes X linear in t
+ * and Y a cubic in X, and their Y values are a least squares fit to
+ * SAMPLES_PER_SPAN points along every original span in the run. Runs are
+ * grown by doubling and then binary search, so each knot is fitted O(log n)
+ * times.
+ * 
+ * A fit is accepted only if it provably stays within the maximum deviation.
+ * On an original span, the fit's Y at the span's own X(t) is a polynomial of
+ * degree 9 in t, so its difference from the span's Y(t) is too. Written in
+ * the Bernstein basis, that difference lies between its least and greatest
+ * coefficients, so the largest coefficient is a bound on the deviation over
+ * the whole span. Where the bound is too loose to decide, the polynomial is
+ * split with de Casteljau's algorithm, whose halves have tighter bounds, down
+ * to MAX_DEPTH levels.
+ */
+public final class CurveSimplifier {
+
+    final static int                SAMPLES_PER_SPAN = 32;
+
+    // Limits on splitting a difference polynomial to tighten its bound.
+    // Splitting stops once the bound is within GAP of the value the
+    // polynomial actually reaches, relative to that value.
+    private final static int        MAX_DEPTH        = 20;
+    private final static double     GAP              = 1e-3;
+    private final static int        DEGREE           = 9;
+
+    // BINOMIAL[n][k] is n choose k, up to the degree of the difference
+    private final static double[][] BINOMIAL         = binomials(DEGREE);
+
+    private CurveSimplifier() {
+    }
+
+    /**
+     * @param bezier
+     *            The curve to simplify, which isn't changed
+     * @param maxDeviation
+     *            The largest difference in Y at the same X allowed between
+     *            the original and simplified curves, which is guaranteed
+     *            everywhere rather than only at sample points
+     * @return
+     *         The simplified curve and how much it was reduced
+     */
+    public static Report simplify(Bezier bezier, double maxDeviation) {
+        if (!(maxDeviation >= 0) || Double.isInfinite(maxDeviation))
+            throw new IllegalArgumentException("maxDeviation must be finite and non-negative: " + maxDeviation);
+
+        CompiledCurve curve = bezier.getCompiledCurve();
+        int count = curve.getSpanCount();
+        List<Point2D> pts = new ArrayList<Point2D>();
+        Report report = new Report();
+        report.originalSpans = count;
+        if (count == 0) {
+            report.bezier = new Bezier(pts);
+            return report;
+        }
+
+        double[] fit = new double[2];
+        pts.add(curve.getSpan(0).getCtrlPt(0));
+        int first = 0;
+        while (first < count) {
+
+            // Find the longest run starting at first that fits, doubling its
+            // length until a fit fails and then binary searching
+            int good = first;
+            int bad = count;
+            for (int step = 1; good < count - 1; step *= 2) {
+                int last = (int) Math.min((long) first + step, count - 1);
+                if (fit(curve, first, last, fit, maxDeviation) <= maxDeviation) {
+                    good = last;
+                }
+                else {
+                    bad = last;
+                    break;
+                }
+            }
+            while (bad - good > 1) {
+                int mid = (good + bad) >>> 1;
+                if (fit(curve, first, mid, fit, maxDeviation) <= maxDeviation)
+                    good = mid;
+                else
+                    bad = mid;
+            }
+
+            // A span that doesn't merge with its neighbors is kept as it was
+            Bezier.Span end = curve.getSpan(good);
+            if (good == first) {
+                pts.add(end.getCtrlPt(1));
+                pts.add(end.getCtrlPt(2));
+            }
+            else {
+
+                // Refit the chosen run, tightening its bound for the report
+                double error = fit(curve, first, good, fit, 0);
+                report.maxError = Math.max(report.maxError, error);
+                double startX = curve.getSpan(first).getStartX();
+                double rangeX = end.getStopX() - startX;
+                pts.add(new Point2D(startX + rangeX / 3, fit[0]));
+                pts.add(new Point2D(startX + rangeX * 2 / 3, fit[1]));
+            }
+            pts.add(end.getCtrlPt(3));
+            report.spans++;
+            first = good + 1;
+        }
+
+        report.bezier = new Bezier(pts);
+        return report;
+    }
+
+    /**
+     * Fits one span over spans first to last, keeping their outer knots
+     * 
+     * @param out
+     *            Filled with the Y values of the fitted span's inner control
+     *            points
+     * @param target
+     *            The deviation below which the bound needn't be tightened
+     * @return
+     *         A bound on the difference in Y between the fit and the
+     *         original spans, or infinity if the run can't be fitted
+     */
+    private static double fit(CompiledCurve curve, int first, int last, double[] out, double target) {
+        Bezier.Span startSpan = curve.getSpan(first);
+        Bezier.Span stopSpan = curve.getSpan(last);
+        double x0 = startSpan.getStartX();
+        double y0 = startSpan.getStartY();
+        double rangeX = stopSpan.getStopX() - x0;
+        double y3 = stopSpan.getStopY();
+        if (!(rangeX > 0))
+            return Double.POSITIVE_INFINITY;
+
+        // Least squares for the inner control points, with Y(u) = y0 B0(u)
+        // + y1 B1(u) + y2 B2(u) + y3 B3(u) and u = (x - x0) / rangeX
+        double s11 = 0;
+        double s12 = 0;
+        double s22 = 0;
+        double r1 = 0;
+        double r2 = 0;
+        for (int s = first; s <= last; s++) {
+            Bezier.Span span = curve.getSpan(s);
+            for (int k = 1; k <= SAMPLES_PER_SPAN; k++) {
+                double t = (double) k / SAMPLES_PER_SPAN;
+                double u = (span.solveCubic(t, true) - x0) / rangeX;
+                double v = 1 - u;
+                double b1 = 3 * u * v * v;
+                double b2 = 3 * u * u * v;
+                double r = span.solveCubic(t, false) - y0 * v * v * v - y3 * u * u * u;
+                s11 += b1 * b1;
+                s12 += b1 * b2;
+                s22 += b2 * b2;
+                r1 += b1 * r;
+                r2 += b2 * r;
+            }
+        }
+        double det = s11 * s22 - s12 * s12;
+        if (det == 0)
+            return Double.POSITIVE_INFINITY;
+        out[0] = (r1 * s22 - r2 * s12) / det;
+        out[1] = (r2 * s11 - r1 * s12) / det;
+        return deviation(curve, first, last, out, target);
+    }
+
+    /**
+     * @param fit
+     *            The Y values of the inner control points of a span fitted
+     *            over spans first to last
+     * @param target
+     *            The deviation below which the bound needn't be tightened
+     * @return
+     *         A bound on the largest difference in Y between the fit and the
+     *         original spans at the same X
+     */
+    private static double deviation(CompiledCurve curve, int first, int last, double[] fit, double target) {
+        double x0 = curve.getSpan(first).getStartX();
+        double y0 = curve.getSpan(first).getStartY();
+        double rangeX = curve.getSpan(last).getStopX() - x0;
+        double y1 = fit[0];
+        double y2 = fit[1];
+        double y3 = curve.getSpan(last).getStopY();
+
+        double[] u = new double[4];
+        double[] v = new double[4];
+        double[] y = new double[4];
+        double[] ones = { 1, 1, 1, 1, 1, 1, 1 };
+        double ret = 0;
+        for (int s = first; s <= last; s++) {
+            Bezier.Span span = curve.getSpan(s);
+
+            // The Bernstein coefficients of u(t) = (X(t) - x0) / rangeX on
+            // this span are its control points' X values mapped the same way
+            for (int k = 0; k < 4; k++) {
+                Point2D pt = span.getCtrlPt(k);
+                u[k] = (pt.x() - x0) / rangeX;
+                v[k] = 1 - u[k];
+                y[k] = pt.y();
+            }
+
+            // The fit's Y is y0 V^3 + 3 y1 U V^2 + 3 y2 U^2 V + y3 U^3, less
+            // the span's own Y raised to degree 9
+            double[] uu = multiply(u, u);
+            double[] vv = multiply(v, v);
+            double[] diff = multiply(vv, v);
+            double[] uvv = multiply(u, vv);
+            double[] uuv = multiply(uu, v);
+            double[] uuu = multiply(uu, u);
+            double[] spanY = multiply(y, ones);
+            for (int k = 0; k <= DEGREE; k++) {
+                diff[k] = y0 * diff[k] + 3 * y1 * uvv[k] + 3 * y2 * uuv[k] + y3 * uuu[k] - spanY[k];
+            }
+            ret = Math.max(ret, maxAbs(diff, Math.max(target, ret), 0));
+        }
+        return ret;
+    }
+
+    /**
+     * @return
+     *         The Bernstein coefficients of the product of two polynomials
+     *         given by their Bernstein coefficients
+     */
+    private static double[] multiply(double[] a, double[] b) {
+        int m = a.length - 1;
+        int n = b.length - 1;
+        double[] ret = new double[m + n + 1];
+        for (int i = 0; i <= m; i++) {
+            for (int j = 0; j <= n; j++) {
+                ret[i + j] += BINOMIAL[m][i] * BINOMIAL[n][j] * a[i] * b[j];
+            }
+        }
+        for (int k = 0; k <= m + n; k++) {
+            ret[k] /= BINOMIAL[m + n][k];
+        }
+        return ret;
+    }
+
+    private static double[][] binomials(int max) {
+        double[][] ret = new double[max + 1][];
+        for (int n = 0; n <= max; n++) {
+            ret[n] = new double[n + 1];
+            ret[n][0] = 1;
+            ret[n][n] = 1;
+            for (int k = 1; k < n; k++) {
+                ret[n][k] = ret[n - 1][k - 1] + ret[n - 1][k];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Bounds |p(t)| on [0, 1] by the largest of its Bernstein coefficients,
+     * splitting it in half while that bound is well above what p reaches at
+     * the ends of the piece
+     * 
+     * @param coeffs
+     *            The Bernstein coefficients of p
+     * @param floor
+     *            A value the bound of the whole polynomial is already known
+     *            to reach, below which this piece needn't be tightened
+     * @return
+     *         An upper bound on |p(t)| over the piece
+     */
+    private static double maxAbs(double[] coeffs, double floor, int depth) {
+        int n = coeffs.length - 1;
+        double upper = 0;
+        for (double c : coeffs) {
+            upper = Math.max(upper, Math.abs(c));
+        }
+        double lower = Math.max(Math.abs(coeffs[0]), Math.abs(coeffs[n]));
+        if (upper <= floor || upper - lower <= GAP * lower || depth >= MAX_DEPTH)
+            return upper;
+
+        // de Casteljau at t = 1/2. The left half's coefficients are the first
+        // point of each level and the right half's are the last.
+        double[] left = new double[n + 1];
+        double[] right = new double[n + 1];
+        double[] work = coeffs.clone();
+        for (int level = 0; level <= n; level++) {
+            left[level] = work[0];
+            right[n - level] = work[n - level];
+            for (int i = 0; i < n - level; i++) {
+                work[i] = (work[i] + work[i + 1]) * 0.5;
+            }
+        }
+        double ret = maxAbs(left, Math.max(floor, lower), depth + 1);
+        return Math.max(ret, maxAbs(right, Math.max(floor, ret), depth + 1));
+    }
+
+    /**
+     * The simplified curve, with how much it was reduced and how far it
+     * strays from the original
+     */
+    public static class Report {
+        private Bezier bezier;
+        private int    originalSpans;
+        private int    spans;
+        private double maxError;
+
+        public Bezier getBezier() {
+            return bezier;
+        }
+
+        public int getOriginalSpans() {
+            return originalSpans;
+        }
+
+        public int getSpans() {
+            return spans;
+        }
+
+        /**
+         * @return
+         *         The original span count divided by the simplified one
+         */
+        public double getReduction() {
+            return spans == 0 ? 1 : (double) originalSpans / spans;
+        }
+
+        /**
+         * @return
+         *         A bound on the largest difference in Y at the same X between
+         *         the original and simplified curves, which is never above the
+         *         maximum deviation asked for
+         */
+        public double getMaxError() {
+            return maxError;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d spans to %d (%.1fx), max error %.3g", originalSpans, spans, getReduction(),
+                    maxError);
+        }
+    }
+}
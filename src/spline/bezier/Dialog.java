@@ -1,9 +1,11 @@
 package spline.bezier;
 
 import java.awt.BorderLayout;
+import java.awt.EventQueue;
 import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.concurrent.Executor;
 
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -151,28 +153,19 @@ public class Dialog extends JDialog {
         bezier = new Bezier();
         graph = new BezierUI();
         bezier.registerObserver(graph);
+
+        // Update the graph on the event thread, after any burst of changes
+        bezier.setNotificationExecutor(new Executor() {
+            public void execute(Runnable command) {
+                EventQueue.invokeLater(command);
+            }
+        });
     }
 
     private void defineBezier() {
-
-        bezier.setKnotCount(3);
-        bezier.setNextX(0);
-        bezier.setNextX(10f);
-        bezier.setNextX(20f);
-        bezier.setNextX(50f);
-
-        bezier.setNextX(60f);
-        bezier.setNextX(70f);
-        bezier.setNextX(100f);
-
-        bezier.setNextY(0f);
-        bezier.setNextY(75f);
-        bezier.setNextY(25f);
-        bezier.setNextY(50f);
-
-        bezier.setNextY(10f);
-        bezier.setNextY(30f);
-        bezier.setNextY(100f);
+        double[] xs = { 0, 10f, 20f, 50f, 60f, 70f, 100f };
+        double[] ys = { 0f, 75f, 25f, 50f, 10f, 30f, 100f };
+        bezier.setCtrlPts(xs, ys);
     }
 
 }
@@ -0,0 +1,87 @@
+package spline.bezier;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size histogram of non-negative values with log-linear buckets, in
+ * the style of HdrHistogram. Each power of two is split into eight buckets,
+ * so percentiles are reported to within 12.5% across the whole long range
+ * with no allocation when recording.
+ */
+class LatencyHistogram {
+
+    private final static int SUB_BUCKET_BITS  = 3;
+    private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 << SUB_BUCKET_BITS);
+    private final AtomicLong      count  = new AtomicLong();
+    private final AtomicLong      max    = new AtomicLong();
+
+    void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        long prev;
+        while (value > (prev = max.get()) && !max.compareAndSet(prev, value))
+            ;
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+    }
+
+    /**
+     * @return
+     *         The largest value that falls in the given bucket
+     */
+    private static long bucketTop(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT)
+            return bucket;
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long bottom = (long) (SUB_BUCKET_COUNT + (bucket & (SUB_BUCKET_COUNT - 1))) << shift;
+        return bottom + (1L << shift) - 1;
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile
+     *            0 to 100
+     * @return
+     *         An upper bound on the given percentile of the recorded values,
+     *         or 0 if nothing has been recorded
+     */
+    long getPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(bucketTop(i), max.get());
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,236 @@
+package spline.bezier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precomputed samples of a Bezier's position, velocity and acceleration on a
+ * uniform X grid per span. Queries are answered by interpolating between the
+ * two nearest samples, with no X to t inversion. Each span gets its own grid
+ * so the derivative discontinuities at knots are preserved.
+ */
+public class LookupTable {
+
+    public enum Interpolation {
+        LINEAR, CUBIC_HERMITE
+    }
+
+    private final static int START_INTERVALS = 8;
+    private final static int MAX_INTERVALS   = 1 << 16;
+
+    private final Interpolation mode;
+    private final double        maxError;
+    private double              measuredError;
+
+    // Per span grid layout
+    private final int[]         offset;
+    private final int[]         intervals;
+    private final double[]      startX;
+    private final double[]      step;
+    private final double[]      invStep;
+
+    // Samples for all spans, packed back to back
+    private final double[]      pos;
+    private final double[]      vel;
+    private final double[]      accel;
+
+    /**
+     * Samples every span, refining each span's grid until the interpolated
+     * position is within maxError of the exact position at the quarter points
+     * of every grid interval. The bound is only checked there, so between
+     * them the error can go a little over it.
+     *
+     * @param curve
+     *            The curve to sample, whose inversion settings are used to
+     *            solve the samples
+     * @param maxError
+     *            The largest acceptable position error
+     * @param mode
+     *            How to interpolate between samples
+     */
+    LookupTable(CompiledCurve curve, double maxError, Interpolation mode) {
+        this.mode = mode;
+        this.maxError = maxError;
+
+        List<Bezier.Span> spans = curve.spans.asList();
+        int spanCount = spans.size();
+        offset = new int[spanCount];
+        intervals = new int[spanCount];
+        startX = new double[spanCount];
+        step = new double[spanCount];
+        invStep = new double[spanCount];
+
+        List<double[][]> samples = new ArrayList<double[][]>(spanCount);
+        int total = 0;
+        for (int i = 0; i < spanCount; i++) {
+            Bezier.Span span = spans.get(i);
+            startX[i] = span.getStartX();
+
+            int n = START_INTERVALS;
+            double[][] spanSamples;
+            while (true) {
+                spanSamples = sample(curve, span, n);
+                double error = intervalError(curve, span, n, spanSamples);
+                if (error <= maxError || n >= MAX_INTERVALS || span.getRangeX() <= 0) {
+                    measuredError = Math.max(measuredError, error);
+                    break;
+                }
+                n *= 2;
+            }
+
+            intervals[i] = n;
+            step[i] = span.getRangeX() / n;
+            invStep[i] = step[i] > 0 ? 1 / step[i] : 0;
+            offset[i] = total;
+            total += n + 1;
+            samples.add(spanSamples);
+        }
+
+        pos = new double[total];
+        vel = new double[total];
+        accel = new double[total];
+        for (int i = 0; i < spanCount; i++) {
+            double[][] spanSamples = samples.get(i);
+            int count = intervals[i] + 1;
+            System.arraycopy(spanSamples[0], 0, pos, offset[i], count);
+            System.arraycopy(spanSamples[1], 0, vel, offset[i], count);
+            System.arraycopy(spanSamples[2], 0, accel, offset[i], count);
+        }
+    }
+
+    /**
+     * Solves for the samples with the curve's inversion settings. The solves
+     * aren't counted in the curve's metrics, which count the user's queries.
+     *
+     * @return
+     *         The position, velocity, acceleration and t at each sample
+     */
+    private static double[][] sample(CompiledCurve curve, Bezier.Span span, int n) {
+        double[][] ret = new double[4][n + 1];
+        double x0 = span.getStartX();
+        double h = span.getRangeX() / n;
+        double t = Bezier.Span.NO_GUESS;
+        for (int k = 0; k <= n; k++) {
+            t = span.tOfX(x0 + k * h, t, curve.getInversion(), curve.getSolverTolerance(), null);
+            ret[0][k] = span.solveCubic(t, false);
+            ret[1][k] = span.velocityAtT(t);
+            ret[2][k] = span.accelAtT(t);
+            ret[3][k] = t;
+        }
+        return ret;
+    }
+
+    /**
+     * @return
+     *         The worst interpolated position error at the quarter points of
+     *         the grid intervals
+     */
+    private double intervalError(CompiledCurve curve, Bezier.Span span, int n, double[][] samples) {
+        double x0 = span.getStartX();
+        double h = span.getRangeX() / n;
+        double ret = 0;
+        for (int k = 0; k < n; k++) {
+            double t = samples[3][k];
+            for (int q = 1; q < 4; q++) {
+                double f = q * 0.25;
+                t = span.tOfX(x0 + (k + f) * h, t, curve.getInversion(), curve.getSolverTolerance(), null);
+                double exact = span.solveCubic(t, false);
+                double approx = interpolate(samples[0], samples[1], k, f, h);
+                ret = Math.max(ret, Math.abs(exact - approx));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Interpolates values between samples k and k + 1, using slopes as the
+     * derivative for cubic Hermite interpolation. An interval with an infinite
+     * slope at either end, where a control point sits on a knot's X and the
+     * curve is vertical, is interpolated linearly instead.
+     */
+    private double interpolate(double[] values, double[] slopes, int k, double f, double h) {
+        double p0 = values[k];
+        double p1 = values[k + 1];
+        if (mode == Interpolation.LINEAR || !(Math.abs(slopes[k]) + Math.abs(slopes[k + 1]) < Double.MAX_VALUE))
+            return p0 + (p1 - p0) * f;
+
+        double f2 = f * f;
+        double f3 = f2 * f;
+        double h00 = 2 * f3 - 3 * f2 + 1;
+        double h10 = f3 - 2 * f2 + f;
+        double h01 = -2 * f3 + 3 * f2;
+        double h11 = f3 - f2;
+        return h00 * p0 + h10 * h * slopes[k] + h01 * p1 + h11 * h * slopes[k + 1];
+    }
+
+    private double linear(double[] values, int k, double f) {
+        return values[k] + (values[k + 1] - values[k]) * f;
+    }
+
+    /**
+     * @return
+     *         The index of the sample at or before x within the given span
+     */
+    private int sampleIndex(int span, double u) {
+        int k = (int) u;
+        if (k < 0)
+            k = 0;
+        else if (k >= intervals[span])
+            k = intervals[span] - 1;
+        return k;
+    }
+
+    double positionAtX(int span, double x) {
+        double u = (x - startX[span]) * invStep[span];
+        int k = sampleIndex(span, u);
+        return interpolate(pos, vel, offset[span] + k, u - k, step[span]);
+    }
+
+    double velocityAtX(int span, double x) {
+        double u = (x - startX[span]) * invStep[span];
+        int k = sampleIndex(span, u);
+        return interpolate(vel, accel, offset[span] + k, u - k, step[span]);
+    }
+
+    double accelAtX(int span, double x) {
+        double u = (x - startX[span]) * invStep[span];
+        int k = sampleIndex(span, u);
+        return linear(accel, offset[span] + k, u - k);
+    }
+
+    public Interpolation getInterpolation() {
+        return mode;
+    }
+
+    /**
+     * @return
+     *         The error bound the table was sized for
+     */
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * @return
+     *         The worst position error against the exact path, measured at
+     *         the quarter points of every grid interval when the table was
+     *         built
+     */
+    public double getMeasuredError() {
+        return measuredError;
+    }
+
+    public int getSampleCount() {
+        return pos.length;
+    }
+
+    /**
+     * @return
+     *         The approximate number of bytes held by the table's arrays
+     */
+    public long getMemoryFootprint() {
+        long spanBytes = (long) offset.length * (4 + 4 + 8 + 8 + 8);
+        long sampleBytes = (long) pos.length * 8 * 3;
+        return spanBytes + sampleBytes;
+    }
+}
@@ -0,0 +1,246 @@
+package spline.bezier;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * A curve evaluated straight from a mapped BezierFile. Span lookups and the X
+ * to t inversion read the stored control points and coefficients in place,
+ * the same way CompiledCurve reads its spans, so answers match the Bezier the
+ * file was written from.
+ */
+public final class MappedCurve {
+
+    private final DoubleBuffer pts;
+    private final DoubleBuffer coeffs;
+    private final DoubleBuffer extrema;
+    private final int          spanCount;
+    private final double       minY;
+    private final double       maxY;
+    private double             solverTolerance = 1e-9;
+    private Bezier.Inversion   inversion       = Bezier.Inversion.NEWTON;
+
+    // Hint only, as in CompiledCurve
+    private int                lastSpanHit;
+
+    // X(t) of one span for the Newton solve, one per thread so that queries
+    // from several threads don't allocate or share one
+    private final ThreadLocal<SpanX> spanX = new ThreadLocal<SpanX>() {
+        @Override
+        protected SpanX initialValue() {
+            return new SpanX();
+        }
+    };
+
+    /**
+     * @param buf
+     *            A mapped file whose header has already been checked
+     */
+    MappedCurve(ByteBuffer buf) {
+        spanCount = buf.getInt(12);
+        int ptCount = buf.getInt(16);
+        minY = buf.getDouble(24);
+        maxY = buf.getDouble(32);
+
+        int coeffStart = BezierFile.HEADER_BYTES + ptCount * 16;
+        int extremaStart = coeffStart + spanCount * Bezier.COEFFS_PER_SPAN * 8;
+        pts = view(buf, BezierFile.HEADER_BYTES, ptCount * 2);
+        coeffs = view(buf, coeffStart, spanCount * Bezier.COEFFS_PER_SPAN);
+        extrema = view(buf, extremaStart, spanCount * 2);
+    }
+
+    private static DoubleBuffer view(ByteBuffer buf, int start, int doubles) {
+        ByteBuffer slice = buf.duplicate();
+        slice.position(start);
+        slice.limit(start + doubles * 8);
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    public int getSpanCount() {
+        return spanCount;
+    }
+
+    public double getStartX() {
+        return spanCount != 0 ? spanStartX(0) : 0f;
+    }
+
+    public double getStopX() {
+        return spanCount != 0 ? spanStopX(spanCount - 1) : 0f;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * @return
+     *         The lowest Y value reached by one span
+     */
+    public double getSpanMinY(int span) {
+        return extrema.get(span * 2);
+    }
+
+    /**
+     * @return
+     *         The highest Y value reached by one span
+     */
+    public double getSpanMaxY(int span) {
+        return extrema.get(span * 2 + 1);
+    }
+
+    public double getSolverTolerance() {
+        return solverTolerance;
+    }
+
+    /**
+     * @param tolerance
+     *            The change in t below which the X to t inversion is
+     *            considered converged. BezierFile.map sets this to the
+     *            tolerance of the curve the file was written from.
+     */
+    public void setSolverTolerance(double tolerance) {
+        this.solverTolerance = tolerance;
+    }
+
+    public Bezier.Inversion getInversion() {
+        return inversion;
+    }
+
+    /**
+     * @param inversion
+     *            How spans invert X to t. BezierFile.map sets this to the
+     *            inversion of the curve the file was written from.
+     */
+    public void setInversion(Bezier.Inversion inversion) {
+        this.inversion = inversion;
+    }
+
+    public double positionAtX(double x) {
+        int span = spanIndexContainingX(x);
+        if (span < 0)
+            return Bezier.ERROR;
+        return cubic(span * Bezier.COEFFS_PER_SPAN + 4, tOfX(span, x));
+    }
+
+    /**
+     * @return
+     *         dy/dx at x
+     */
+    public double velocityAtX(double x) {
+        int span = spanIndexContainingX(x);
+        if (span < 0)
+            return Bezier.ERROR;
+        int base = span * Bezier.COEFFS_PER_SPAN;
+        double t = tOfX(span, x);
+        return cubicPrime(base + 4, t) / cubicPrime(base, t);
+    }
+
+    /**
+     * @return
+     *         d^2y/dx^2 at x
+     */
+    public double accelAtX(double x) {
+        int span = spanIndexContainingX(x);
+        if (span < 0)
+            return Bezier.ERROR;
+        int base = span * Bezier.COEFFS_PER_SPAN;
+        double t = tOfX(span, x);
+        double xPrime = cubicPrime(base, t);
+        double yPrime = cubicPrime(base + 4, t);
+        double xDoublePrime = cubicDoublePrime(base, t);
+        double yDoublePrime = cubicDoublePrime(base + 4, t);
+        return (yDoublePrime * xPrime - yPrime * xDoublePrime) / (xPrime * xPrime * xPrime);
+    }
+
+    private double spanStartX(int span) {
+        return pts.get(span * 6);
+    }
+
+    private double spanStopX(int span) {
+        return pts.get(span * 6 + 6);
+    }
+
+    /**
+     * @return
+     *         The index of the first span containing x, or -1 if x is outside
+     *         of the curve
+     */
+    int spanIndexContainingX(double x) {
+        if (spanCount == 0)
+            return -1;
+
+        // Try the last span hit and its neighbor first
+        int cursor = lastSpanHit;
+        if (x >= spanStartX(cursor) && x <= spanStopX(cursor) && (cursor == 0 || x > spanStartX(cursor)))
+            return cursor;
+
+        // Written so NaN fails the range check rather than reaching the
+        // binary search
+        if (!(x >= getStartX() && x <= getStopX()))
+            return -1;
+
+        // Find the last span starting strictly before x, so a knot shared by
+        // two spans belongs to the earlier one
+        int lo = 0;
+        int hi = spanCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (spanStartX(mid) < x)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        lastSpanHit = lo;
+        return lo;
+    }
+
+    private double cubic(int i, double t) {
+        return ((coeffs.get(i) * t + coeffs.get(i + 1)) * t + coeffs.get(i + 2)) * t + coeffs.get(i + 3);
+    }
+
+    private double cubicPrime(int i, double t) {
+        return (3 * coeffs.get(i) * t + 2 * coeffs.get(i + 1)) * t + coeffs.get(i + 2);
+    }
+
+    private double cubicDoublePrime(int i, double t) {
+        return 6 * coeffs.get(i) * t + 2 * coeffs.get(i + 1);
+    }
+
+    /**
+     * Inverts X(t) = x the same way Span.tOfX does, reading the coefficients
+     * from the mapped file
+     */
+    private double tOfX(int span, double x) {
+        int base = span * Bezier.COEFFS_PER_SPAN;
+        if (inversion == Bezier.Inversion.CLOSED_FORM)
+            return RootSolver.cubicRoot(coeffs.get(base), coeffs.get(base + 1), coeffs.get(base + 2),
+                    coeffs.get(base + 3), x);
+
+        double startX = spanStartX(span);
+        double range = spanStopX(span) - startX;
+        double guess = range <= 0 ? 0 : Math.min(1, Math.max(0, (x - startX) / range));
+        SpanX f = spanX.get();
+        f.base = base;
+        return RootSolver.newton(f, x, 0, 1, guess, solverTolerance, true, null);
+    }
+
+    /**
+     * X(t) on the span whose coefficients start at base, for RootSolver
+     */
+    private class SpanX implements RootSolver.Function {
+        int base;
+
+        public double value(double t) {
+            return cubic(base, t);
+        }
+
+        public double slope(double t) {
+            return cubicPrime(base, t);
+        }
+    }
+}
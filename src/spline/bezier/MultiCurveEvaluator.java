@@ -0,0 +1,368 @@
+package spline.bezier;
+
+import java.util.List;
+
+/**
+ * Evaluates many independent curves at the same X, such as one curve per axis
+ * of a machine evaluated every control tick. The span coefficients of all the
+ * curves are packed into one array, and each call gathers the current span of
+ * every curve into lanes of parallel arrays, then inverts X to t on each lane
+ * as Span.tOfX would, with the inversion method and solver tolerance of the
+ * version of the curve that was packed.
+ * 
+ * Lanes remember their span and t between calls, so when X moves steadily
+ * forward each curve's span is found without a search and each solve starts
+ * next to its root.
+ * 
+ * When the jdk.incubator.vector module is present (run with --add-modules
+ * jdk.incubator.vector) the solves run in VectorKernel, a block of lanes at a
+ * time in SIMD registers. Otherwise, and for the lanes left over after the
+ * last full block, each lane is solved in turn with RootSolver.newton. Both
+ * take the same steps and give the same results. Lanes of curves using the
+ * closed form inversion are always solved one at a time.
+ */
+public class MultiCurveEvaluator {
+
+    // The class of the Vector API solve, or null when its module isn't loaded
+    private final static Class<? extends Kernel> KERNEL = kernelClass();
+
+    private final Bezier[]   curves;
+    private final long[]     versions;
+    private final int        laneCount;
+
+    // Every curve's spans packed back to back. Curve c's spans start at
+    // spanOffset[c], and span s of all curves has its coefficients at
+    // (spanOffset[c] + s) * COEFFS_PER_SPAN.
+    private int[]            spanOffset;
+    private int[]            spanCount;
+    private double[]         coeffs;
+    private double[]         startX;
+    private double[]         stopX;
+
+    // Each curve's inversion settings, as of the last recompile
+    private final boolean[]  closedForm;
+    private final double[]   tolerance;
+
+    // Lane state, one entry per curve
+    private final int[]      laneSpan;
+    private final double[]   laneStart;
+    private final double[]   laneStop;
+    private final double[]   ax;
+    private final double[]   bx;
+    private final double[]   cx;
+    private final double[]   dx;
+    private final double[]   ay;
+    private final double[]   by;
+    private final double[]   cy;
+    private final double[]   dy;
+    private final double[]   t;
+    private final double[]   dtdx;
+    private final boolean[]  active;
+    private final boolean[]  newton;
+    private final Lane       lane = new Lane();
+
+    private Kernel           kernel          = newKernel();
+    private double           lastX;
+
+    /**
+     * @param curves
+     *            The curves to evaluate, in lane order
+     */
+    public MultiCurveEvaluator(List<Bezier> curves) {
+        this.curves = curves.toArray(new Bezier[curves.size()]);
+        this.laneCount = this.curves.length;
+        versions = new long[laneCount];
+        closedForm = new boolean[laneCount];
+        tolerance = new double[laneCount];
+        laneSpan = new int[laneCount];
+        laneStart = new double[laneCount];
+        laneStop = new double[laneCount];
+        ax = new double[laneCount];
+        bx = new double[laneCount];
+        cx = new double[laneCount];
+        dx = new double[laneCount];
+        ay = new double[laneCount];
+        by = new double[laneCount];
+        cy = new double[laneCount];
+        dy = new double[laneCount];
+        t = new double[laneCount];
+        dtdx = new double[laneCount];
+        active = new boolean[laneCount];
+        newton = new boolean[laneCount];
+        recompile();
+    }
+
+    /**
+     * Packs the current version of every curve, along with its inversion
+     * method and solver tolerance. Call this after isStale returns true to
+     * pick up edits and setting changes.
+     */
+    public void recompile() {
+        CompiledCurve[] compiled = new CompiledCurve[laneCount];
+        spanOffset = new int[laneCount];
+        spanCount = new int[laneCount];
+        int total = 0;
+        for (int c = 0; c < laneCount; c++) {
+            compiled[c] = curves[c].getCompiledCurve();
+            versions[c] = compiled[c].getVersion();
+            closedForm[c] = compiled[c].getInversion() == Bezier.Inversion.CLOSED_FORM;
+            tolerance[c] = compiled[c].getSolverTolerance();
+            spanOffset[c] = total;
+            spanCount[c] = compiled[c].getSpanCount();
+            total += spanCount[c];
+        }
+
+        coeffs = new double[total * Bezier.COEFFS_PER_SPAN];
+        startX = new double[total];
+        stopX = new double[total];
+        for (int c = 0; c < laneCount; c++) {
+            for (int s = 0; s < spanCount[c]; s++) {
+                Bezier.Span span = compiled[c].getSpan(s);
+                int i = spanOffset[c] + s;
+                for (int k = 0; k < Bezier.COEFFS_PER_SPAN; k++) {
+                    coeffs[i * Bezier.COEFFS_PER_SPAN + k] = span.getCoeff(k);
+                }
+                startX[i] = span.getStartX();
+                stopX[i] = span.getStopX();
+            }
+            laneSpan[c] = -1;
+        }
+    }
+
+    /**
+     * @return
+     *         Whether any curve has changed since the last recompile
+     */
+    public boolean isStale() {
+        for (int c = 0; c < laneCount; c++) {
+            if (curves[c].getVersion() != versions[c])
+                return true;
+        }
+        return false;
+    }
+
+    private static Class<? extends Kernel> kernelClass() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+            return null;
+        try {
+            return Class.forName("spline.bezier.VectorKernel").asSubclass(Kernel.class);
+        }
+        catch (ClassNotFoundException e) {
+            return null;
+        }
+        catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return
+     *         A Vector API solve for this evaluator's own use, since it keeps
+     *         scratch state, or null if it isn't available
+     */
+    private static Kernel newKernel() {
+        if (KERNEL == null)
+            return null;
+        try {
+            return KERNEL.getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return
+     *         Whether the Vector API solve is available, which needs the
+     *         jdk.incubator.vector module
+     */
+    public static boolean isVectorAvailable() {
+        return KERNEL != null;
+    }
+
+    /**
+     * @param vectorized
+     *            Whether to solve with the Vector API when it's available, or
+     *            always one lane at a time
+     */
+    public void setVectorized(boolean vectorized) {
+        this.kernel = vectorized ? newKernel() : null;
+    }
+
+    public int size() {
+        return laneCount;
+    }
+
+    /**
+     * Evaluates every curve at x. Any of the output arrays may be null if
+     * that quantity isn't needed. Curves that don't reach x get ERROR.
+     * 
+     * @param x
+     *            The X value at which to evaluate the curves
+     * @param positions
+     *            Filled with the position of each curve, or null
+     * @param velocities
+     *            Filled with the velocity (dy/dx) of each curve, or null
+     * @param accels
+     *            Filled with the acceleration (d^2y/dx^2) of each curve, or
+     *            null
+     */
+    public void evaluate(double x, double[] positions, double[] velocities, double[] accels) {
+        gather(x);
+        solve(x);
+        lastX = x;
+
+        for (int c = 0; c < laneCount; c++) {
+            if (laneSpan[c] < 0) {
+                if (positions != null)
+                    positions[c] = Bezier.ERROR;
+                if (velocities != null)
+                    velocities[c] = Bezier.ERROR;
+                if (accels != null)
+                    accels[c] = Bezier.ERROR;
+                continue;
+            }
+            double u = t[c];
+            if (positions != null)
+                positions[c] = ((ay[c] * u + by[c]) * u + cy[c]) * u + dy[c];
+            if (velocities != null || accels != null) {
+                double xPrime = (3 * ax[c] * u + 2 * bx[c]) * u + cx[c];
+                double yPrime = (3 * ay[c] * u + 2 * by[c]) * u + cy[c];
+                if (velocities != null)
+                    velocities[c] = yPrime / xPrime;
+                if (accels != null) {
+                    double xDoublePrime = 6 * ax[c] * u + 2 * bx[c];
+                    double yDoublePrime = 6 * ay[c] * u + 2 * by[c];
+                    accels[c] = (yDoublePrime * xPrime - yPrime * xDoublePrime) / (xPrime * xPrime * xPrime);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves every lane to the span containing x, loading the span's
+     * coefficients into the lane when it changes
+     */
+    private void gather(double x) {
+        for (int c = 0; c < laneCount; c++) {
+            int span = laneSpan[c];
+
+            // Knots belong to the earlier span, as in CompiledCurve
+            boolean inSpan = span >= 0 && x <= laneStop[c] && (x > laneStart[c] || (span == 0 && x == laneStart[c]));
+            if (!inSpan) {
+                span = findSpan(c, x);
+                laneSpan[c] = span;
+                if (span >= 0) {
+                    int i = spanOffset[c] + span;
+                    int k = i * Bezier.COEFFS_PER_SPAN;
+                    ax[c] = coeffs[k];
+                    bx[c] = coeffs[k + 1];
+                    cx[c] = coeffs[k + 2];
+                    dx[c] = coeffs[k + 3];
+                    ay[c] = coeffs[k + 4];
+                    by[c] = coeffs[k + 5];
+                    cy[c] = coeffs[k + 6];
+                    dy[c] = coeffs[k + 7];
+                    laneStart[c] = startX[i];
+                    laneStop[c] = stopX[i];
+                    t[c] = Bezier.Span.NO_GUESS;
+                }
+            }
+            active[c] = span >= 0;
+        }
+    }
+
+    /**
+     * @return
+     *         The span of curve c owning x, or -1 if x is outside the curve
+     */
+    private int findSpan(int c, double x) {
+        int count = spanCount[c];
+        int first = spanOffset[c];
+        if (count == 0 || !(x >= startX[first] && x <= stopX[first + count - 1]))
+            return -1;
+
+        // Try the span after the last one first, for X moving forward
+        int next = laneSpan[c] + 1;
+        if (next > 0 && next < count && x > startX[first + next] && x <= stopX[first + next])
+            return next;
+
+        int lo = 0;
+        int hi = count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (startX[first + mid] < x)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * Inverts X(t) = x on every active lane
+     */
+    private void solve(double x) {
+        for (int c = 0; c < laneCount; c++) {
+            newton[c] = active[c] && !closedForm[c];
+            if (!newton[c])
+                continue;
+
+            // Step along the tangent from the last solve, which usually lands
+            // close enough that Newton converges in a step or two. A fresh
+            // span starts from a linear guess instead.
+            if (t[c] >= 0 && t[c] <= 1)
+                t[c] += (x - lastX) * dtdx[c];
+            if (!(t[c] >= 0 && t[c] <= 1)) {
+                double range = laneStop[c] - laneStart[c];
+                double guess = range <= 0 ? 0 : (x - laneStart[c]) / range;
+                t[c] = guess < 0 ? 0 : guess > 1 ? 1 : guess;
+            }
+        }
+
+        int solved = kernel == null ? 0 : kernel.solve(x, tolerance, laneCount, ax, bx, cx, dx, newton, t, dtdx);
+        for (int c = 0; c < laneCount; c++) {
+            if (!active[c] || (newton[c] && c < solved))
+                continue;
+            lane.index = c;
+            if (closedForm[c])
+                t[c] = RootSolver.cubicRoot(ax[c], bx[c], cx[c], dx[c], x);
+            else
+                t[c] = RootSolver.newton(lane, x, 0, 1, t[c], tolerance[c], true, null);
+            dtdx[c] = 1 / lane.slope(t[c]);
+        }
+    }
+
+    /**
+     * X(t) on one lane's span, for RootSolver
+     */
+    private class Lane implements RootSolver.Function {
+        int index;
+
+        public double value(double u) {
+            int c = index;
+            return ((ax[c] * u + bx[c]) * u + cx[c]) * u + dx[c];
+        }
+
+        public double slope(double u) {
+            int c = index;
+            return (3 * ax[c] * u + 2 * bx[c]) * u + cx[c];
+        }
+    }
+
+    /**
+     * Solves X(t) = x on the leading lanes, from the guesses in t, leaving
+     * the new t and dt/dx of each active lane in t and dtdx
+     */
+    interface Kernel {
+        /**
+         * @param tolerance
+         *            The solver tolerance of each lane
+         * @return
+         *         The number of leading lanes solved, after which the caller
+         *         solves the rest
+         */
+        int solve(double x, double[] tolerance, int count, double[] a, double[] b, double[] c, double[] d,
+                boolean[] active, double[] t, double[] dtdx);
+    }
+}
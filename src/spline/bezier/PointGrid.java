@@ -0,0 +1,160 @@
+package spline.bezier;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import math.geom2d.Point2D;
+
+/**
+ * A uniform grid over a screen area for finding points near a location or
+ * inside a rectangle without testing every point. Points outside of the area
+ * are kept in the nearest edge cell, so queries are still exact for them.
+ */
+public class PointGrid {
+
+    private double   cellSize;
+    private int      cols;
+    private int      rows;
+    private int      count;
+    private double[] xs        = new double[0];
+    private double[] ys        = new double[0];
+
+    // Indices of the points in each cell, stored back to back. The points of
+    // cell c are items[cellStart[c]] to items[cellStart[c + 1] - 1].
+    private int[]    cellStart = new int[1];
+    private int[]    items     = new int[0];
+
+    /**
+     * Rebuilds the grid for a new set of points
+     *
+     * @param pts
+     *            The points to index, in screen coordinates
+     * @param width
+     *            The width of the screen area
+     * @param height
+     *            The height of the screen area
+     * @param cellSize
+     *            The width and height of each grid cell
+     */
+    public void build(List<Point2D> pts, int width, int height, double cellSize) {
+        this.cellSize = cellSize;
+        this.cols = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        this.count = pts.size();
+
+        if (xs.length < count) {
+            xs = new double[count];
+            ys = new double[count];
+            items = new int[count];
+        }
+        int cellCount = cols * rows;
+        if (cellStart.length != cellCount + 1)
+            cellStart = new int[cellCount + 1];
+        else
+            Arrays.fill(cellStart, 0);
+
+        // Count the points in each cell, then turn the counts into offsets
+        for (int i = 0; i < count; i++) {
+            Point2D p = pts.get(i);
+            xs[i] = p.x();
+            ys[i] = p.y();
+            cellStart[cell(xs[i], ys[i]) + 1]++;
+        }
+        for (int c = 0; c < cellCount; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        // cellStart[c + 1] now holds the end of cell c. Fill each cell from
+        // the back, which leaves cellStart[c + 1] at the start of cell c, then
+        // shift the offsets down by one cell.
+        for (int i = count - 1; i >= 0; i--) {
+            items[--cellStart[cell(xs[i], ys[i]) + 1]] = i;
+        }
+        for (int c = 0; c < cellCount; c++) {
+            cellStart[c] = cellStart[c + 1];
+        }
+        cellStart[cellCount] = count;
+    }
+
+    private int col(double x) {
+        int col = (int) Math.floor(x / cellSize);
+        return col < 0 ? 0 : col >= cols ? cols - 1 : col;
+    }
+
+    private int row(double y) {
+        int row = (int) Math.floor(y / cellSize);
+        return row < 0 ? 0 : row >= rows ? rows - 1 : row;
+    }
+
+    private int cell(double x, double y) {
+        return row(y) * cols + col(x);
+    }
+
+    /**
+     * @param x
+     *            The X location to search from
+     * @param y
+     *            The Y location to search from
+     * @param radius
+     *            The largest distance at which a point counts as a hit
+     * @return
+     *         The index of the closest point within radius of (x, y), the
+     *         lowest index on a tie, or -1 if there is none
+     */
+    public int nearest(double x, double y, double radius) {
+        int ret = -1;
+        double best = radius * radius;
+        int col0 = col(x - radius);
+        int col1 = col(x + radius);
+        int row0 = row(y - radius);
+        int row1 = row(y + radius);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int c = row * cols + col;
+                for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                    int i = items[k];
+                    double dx = xs[i] - x;
+                    double dy = ys[i] - y;
+                    double dist = dx * dx + dy * dy;
+                    if (dist < best || (dist == best && (ret < 0 || i < ret))) {
+                        best = dist;
+                        ret = i;
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Sets the bit of every point inside a rectangle
+     *
+     * @param x0
+     *            The left edge of the rectangle
+     * @param y0
+     *            The top edge of the rectangle
+     * @param x1
+     *            The right edge of the rectangle
+     * @param y1
+     *            The bottom edge of the rectangle
+     * @param out
+     *            Receives the indices of the points inside the rectangle
+     */
+    public void query(double x0, double y0, double x1, double y1, BitSet out) {
+        for (int row = row(y0); row <= row(y1); row++) {
+            for (int col = col(x0); col <= col(x1); col++) {
+                int c = row * cols + col;
+                for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+                    int i = items[k];
+                    if (xs[i] >= x0 && xs[i] <= x1 && ys[i] >= y0 && ys[i] <= y1)
+                        out.set(i);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+}
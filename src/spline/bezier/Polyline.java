@@ -0,0 +1,58 @@
+package spline.bezier;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of points stored in primitive arrays. Clearing keeps the
+ * arrays, so a polyline can be refilled without allocating.
+ */
+public class Polyline implements SampleConsumer {
+
+    private final static int INITIAL_CAPACITY = 64;
+
+    private double[]         xs               = new double[INITIAL_CAPACITY];
+    private double[]         ys               = new double[INITIAL_CAPACITY];
+    private int              size;
+
+    public void accept(double x, double y) {
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @return
+     *         The backing X array. Only the first size() values are valid.
+     */
+    public double[] getXs() {
+        return xs;
+    }
+
+    /**
+     * @return
+     *         The backing Y array. Only the first size() values are valid.
+     */
+    public double[] getYs() {
+        return ys;
+    }
+}
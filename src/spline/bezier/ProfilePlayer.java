@@ -0,0 +1,486 @@
+package spline.bezier;
+
+/**
+ * Steps a Bezier motion profile at a fixed control rate, treating X as time.
+ * The curve is compiled ahead of time into short polynomial segments over the
+ * tick index, and each tick advances them by forward differencing, so a tick
+ * costs a handful of additions with no X to t inversion and no allocation.
+ *
+ * Position and velocity are cubic Hermite segments fitted to the exact curve
+ * at the segment ends, and acceleration is linear between them, as in
+ * LookupTable. Segments never cross a knot and are split until the position
+ * played by forward differencing is within the requested error at every one
+ * of their ticks. Each segment starts again from its stored coefficients, so
+ * rounding from forward differencing can't build up past one segment.
+ */
+public class ProfilePlayer {
+
+    private final static int COEFFS_PER_SEGMENT = 10;
+
+    private final CompiledCurve curve;
+    private final double        period;
+    private final double        startX;
+    private final double        stopX;
+    private final double        maxError;
+    private final long          tickCount;
+
+    // First tick of each segment, and the segment's polynomials in the tick
+    // offset j packed as (pa, pb, pc, pd, va, vb, vc, vd, aSlope, a0)
+    private long[]              segmentStart = new long[16];
+    private double[]            segmentCoeffs = new double[16 * COEFFS_PER_SEGMENT];
+    private int                 segmentCount;
+
+    // Playback state
+    private long                tick;
+    private int                 segment;
+    private long                segmentEnd;
+    private double              pos;
+    private double              pos1;
+    private double              pos2;
+    private double              pos3;
+    private double              vel;
+    private double              vel1;
+    private double              vel2;
+    private double              vel3;
+    private double              accel;
+    private double              accel1;
+
+    /**
+     * Compiles the current version of a curve
+     * 
+     * @see #ProfilePlayer(CompiledCurve, double, double)
+     */
+    public ProfilePlayer(Bezier bezier, double period, double maxError) {
+        this(bezier.getCompiledCurve(), period, maxError);
+    }
+
+    /**
+     * @param curve
+     *            The curve to play
+     * @param period
+     *            The change in X between ticks, such as 0.001 for a 1 kHz
+     *            control loop with X in seconds
+     * @param maxError
+     *            The largest acceptable position error, checked at every tick
+     *            as played from the start of the curve. A seek lands on the
+     *            same values apart from rounding.
+     */
+    public ProfilePlayer(CompiledCurve curve, double period, double maxError) {
+        if (!(period > 0))
+            throw new IllegalArgumentException("period must be positive");
+        this.curve = curve;
+        this.period = period;
+        this.startX = curve.getStartX();
+        this.stopX = curve.getStopX();
+        this.maxError = maxError;
+
+        int spanCount = curve.getSpanCount();
+        tickCount = spanCount == 0 ? 0 : countTicks();
+
+        // Knots belong to the earlier span, so each span plays the ticks in
+        // (start, stop], except the first which also plays its start
+        long first = 0;
+        for (int i = 0; i < spanCount && first < tickCount; i++) {
+            Bezier.Span span = curve.getSpan(i);
+            long last = (long) Math.floor((span.getStopX() - startX) / period);
+            while (last + 1 < tickCount && tickX(last + 1) <= span.getStopX())
+                last++;
+            while (last >= first && tickX(last) > span.getStopX())
+                last--;
+            if (i == spanCount - 1)
+                last = tickCount - 1;
+            if (last >= first) {
+                compileSpan(span, first, last);
+                first = last + 1;
+            }
+        }
+        reset();
+    }
+
+    /**
+     * @return
+     *         The X of a tick. The last tick can land a rounding error past
+     *         the end of the curve, so it's clamped to stopX.
+     */
+    private double tickX(long tick) {
+        return Math.min(startX + tick * period, stopX);
+    }
+
+    /**
+     * @return
+     *         The number of ticks from startX through stopX. The quotient can
+     *         round down past a whole number of periods, so the count is
+     *         corrected until the tick after the last would be past stopX.
+     */
+    private long countTicks() {
+        long ret = (long) Math.floor((stopX - startX) / period) + 1;
+        while (startX + ret * period <= stopX)
+            ret++;
+        return ret;
+    }
+
+    /**
+     * Fits segments to ticks first to last of a span, splitting any segment
+     * that misses the error bound in half
+     */
+    private void compileSpan(Bezier.Span span, long first, long last) {
+
+        // The exact position at every tick, which each candidate segment is
+        // checked against
+        double[] positions = new double[Math.toIntExact(last - first + 1)];
+        double t = Bezier.Span.NO_GUESS;
+        for (int k = 0; k < positions.length; k++) {
+            t = solve(span, tickX(first + k), t);
+            positions[k] = span.solveCubic(t, false);
+        }
+
+        double[] start = exact(span, first, Bezier.Span.NO_GUESS);
+        double[] end = first == last ? start : exact(span, last, start[3]);
+        compileSegment(span, first, last, start, end, positions, first);
+    }
+
+    private void compileSegment(Bezier.Span span, long first, long last, double[] start, double[] end,
+            double[] positions, long spanFirst) {
+        long n = last - first;
+        double[] fit = fit(start, end, n);
+        if (n > 1 && !(segmentError(fit, n, positions, (int) (first - spanFirst)) <= maxError)) {
+            long mid = first + n / 2;
+            double[] middle = exact(span, mid, start[3]);
+
+            // Both halves are fitted through the middle tick, but only the
+            // second plays it since a segment runs until the next one starts
+            compileSegment(span, first, mid, start, middle, positions, spanFirst);
+            compileSegment(span, mid, last, middle, end, positions, spanFirst);
+            return;
+        }
+        addSegment(first, fit);
+    }
+
+    /**
+     * @return
+     *         The exact (position, velocity, acceleration, t) at a tick
+     */
+    private double[] exact(Bezier.Span span, long tick, double guess) {
+        double t = solve(span, tickX(tick), guess);
+        return new double[] { span.solveCubic(t, false), span.velocityAtT(t), span.accelAtT(t), t };
+    }
+
+    /**
+     * Solves for the t at x with the settings of the curve being played,
+     * then takes one more Newton step. The solver
+     * stops within its tolerance in t, which can be worth more position
+     * error than maxError on a steep span, and the extra step brings t to
+     * about machine precision.
+     */
+    private double solve(Bezier.Span span, double x, double guess) {
+        double t = curve.tOfX(span, x, guess);
+        double slope = span.solveCubicPrime(t, true);
+        if (slope > 0) {
+            double polished = t - span.solveCubic(t, true, x) / slope;
+            if (polished >= 0 && polished <= 1)
+                t = polished;
+        }
+        return t;
+    }
+
+    /**
+     * @return
+     *         The segment polynomials in the tick offset j for the given end
+     *         values, n ticks apart
+     */
+    private double[] fit(double[] start, double[] end, long n) {
+        double[] ret = new double[COEFFS_PER_SEGMENT];
+        if (n == 0) {
+            ret[3] = start[0];
+            ret[7] = start[1];
+            ret[9] = start[2];
+            return ret;
+        }
+        double h = n * period;
+        hermite(start[0], end[0], start[1] * h, end[1] * h, n, ret, 0);
+        hermite(start[1], end[1], start[2] * h, end[2] * h, n, ret, 4);
+        ret[8] = (end[2] - start[2]) / n;
+        ret[9] = start[2];
+        return ret;
+    }
+
+    /**
+     * Converts a cubic Hermite segment to power form in j, where j runs from 0
+     * to n across the segment
+     */
+    private static void hermite(double p0, double p1, double m0, double m1, long n, double[] out, int base) {
+        double n2 = (double) n * n;
+        out[base] = (2 * p0 + m0 - 2 * p1 + m1) / (n2 * n);
+        out[base + 1] = (-3 * p0 - 2 * m0 + 3 * p1 - m1) / n2;
+        out[base + 2] = m0 / n;
+        out[base + 3] = p0;
+    }
+
+    /**
+     * Steps a segment's position by forward differences the same way next
+     * does, so the error measured is the error played
+     * 
+     * @param positions
+     *            The exact position at each tick of the span
+     * @param offset
+     *            The index in positions of the segment's first tick
+     * @return
+     *         The largest position error over the segment's ticks
+     */
+    private static double segmentError(double[] fit, long n, double[] positions, int offset) {
+        double p = fit[3];
+        double p1 = horner(fit, 0, 1) - p;
+        double p2 = 6 * fit[0] + 2 * fit[1];
+        double p3 = 6 * fit[0];
+        double ret = 0;
+        for (int j = 1; j <= n; j++) {
+            p += p1;
+            p1 += p2;
+            p2 += p3;
+            double error = Math.abs(positions[offset + j] - p);
+            if (!(error <= ret))
+                ret = error;
+        }
+        return ret;
+    }
+
+    private static double horner(double[] c, int base, double j) {
+        return ((c[base] * j + c[base + 1]) * j + c[base + 2]) * j + c[base + 3];
+    }
+
+    private void addSegment(long first, double[] fit) {
+        if (segmentCount == segmentStart.length) {
+            long[] starts = new long[segmentCount * 2];
+            double[] coeffs = new double[segmentCount * 2 * COEFFS_PER_SEGMENT];
+            System.arraycopy(segmentStart, 0, starts, 0, segmentCount);
+            System.arraycopy(segmentCoeffs, 0, coeffs, 0, segmentCount * COEFFS_PER_SEGMENT);
+            segmentStart = starts;
+            segmentCoeffs = coeffs;
+        }
+        segmentStart[segmentCount] = first;
+        System.arraycopy(fit, 0, segmentCoeffs, segmentCount * COEFFS_PER_SEGMENT, COEFFS_PER_SEGMENT);
+        segmentCount++;
+    }
+
+    /**
+     * Moves back to before the first tick
+     */
+    public void reset() {
+        tick = -1;
+        segment = -1;
+        segmentEnd = 0;
+    }
+
+    /**
+     * Moves to any tick, so the next call to next plays the tick after it
+     * 
+     * @param tick
+     *            The tick to move to, from 0 to getTickCount() - 1
+     */
+    public void seek(long tick) {
+        if (tick < 0 || tick >= tickCount)
+            throw new IndexOutOfBoundsException("tick " + tick + " of " + tickCount);
+
+        // Find the last segment starting at or before the tick
+        int lo = 0;
+        int hi = segmentCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segmentStart[mid] <= tick)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        load(lo, tick - segmentStart[lo]);
+        this.tick = tick;
+    }
+
+    /**
+     * Advances to the next tick
+     * 
+     * @return
+     *         false once every tick has been played
+     */
+    public boolean next() {
+        long nextTick = tick + 1;
+        if (nextTick >= tickCount)
+            return false;
+
+        if (nextTick == segmentEnd) {
+            load(segment + 1, 0);
+        }
+        else {
+            pos += pos1;
+            pos1 += pos2;
+            pos2 += pos3;
+            vel += vel1;
+            vel1 += vel2;
+            vel2 += vel3;
+            accel += accel1;
+        }
+        tick = nextTick;
+        return true;
+    }
+
+    /**
+     * Sets up the forward differences of a segment at tick offset j
+     */
+    private void load(int which, long j) {
+        segment = which;
+        segmentEnd = which + 1 < segmentCount ? segmentStart[which + 1] : tickCount;
+
+        int i = which * COEFFS_PER_SEGMENT;
+        double[] c = segmentCoeffs;
+        pos = horner(c, i, j);
+        pos1 = horner(c, i, j + 1) - pos;
+        pos2 = 6 * c[i] * (j + 1) + 2 * c[i + 1];
+        pos3 = 6 * c[i];
+        vel = horner(c, i + 4, j);
+        vel1 = horner(c, i + 4, j + 1) - vel;
+        vel2 = 6 * c[i + 4] * (j + 1) + 2 * c[i + 5];
+        vel3 = 6 * c[i + 4];
+        accel = c[i + 9] + c[i + 8] * j;
+        accel1 = c[i + 8];
+    }
+
+    /**
+     * @return
+     *         The current tick, or -1 before the first
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public double getX() {
+        return tickX(tick);
+    }
+
+    public double getPosition() {
+        return pos;
+    }
+
+    public double getVelocity() {
+        return vel;
+    }
+
+    public double getAccel() {
+        return accel;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * @return
+     *         The version of the curve this player was compiled from, to
+     *         compare with Bezier.getVersion
+     */
+    public long getVersion() {
+        return curve.getVersion();
+    }
+
+    /**
+     * Plays every tick and compares it with the exact curve. This resets the
+     * player.
+     * 
+     * @return
+     *         The worst and RMS errors of the played values, and the largest
+     *         rounding drift of the forward differences
+     */
+    public Report verify() {
+        Report ret = new Report();
+        double sumSq = 0;
+        int index = -1;
+        double t = Bezier.Span.NO_GUESS;
+
+        reset();
+        while (next()) {
+
+            // Solved the same way as the ticks the segments were fitted to,
+            // seeded from the previous tick on the same span
+            double x = getX();
+            int spanIndex = curve.spanIndexContainingX(x);
+            if (spanIndex != index)
+                t = Bezier.Span.NO_GUESS;
+            index = spanIndex;
+            Bezier.Span span = curve.getSpan(index);
+            t = solve(span, x, t);
+
+            double error = Math.abs(pos - span.solveCubic(t, false));
+            ret.maxPositionError = Math.max(ret.maxPositionError, error);
+            ret.maxVelocityError = Math.max(ret.maxVelocityError, Math.abs(vel - span.velocityAtT(t)));
+            ret.maxAccelError = Math.max(ret.maxAccelError, Math.abs(accel - span.accelAtT(t)));
+            sumSq += error * error;
+
+            // Forward differencing should match evaluating the segment
+            // polynomial directly, apart from rounding
+            int i = segment * COEFFS_PER_SEGMENT;
+            double direct = horner(segmentCoeffs, i, tick - segmentStart[segment]);
+            ret.maxDrift = Math.max(ret.maxDrift, Math.abs(pos - direct));
+        }
+        reset();
+
+        ret.ticks = tickCount;
+        ret.segments = segmentCount;
+        ret.rmsPositionError = tickCount > 0 ? Math.sqrt(sumSq / tickCount) : 0;
+        return ret;
+    }
+
+    /**
+     * The result of comparing a player with the exact curve
+     */
+    public static class Report {
+        private long   ticks;
+        private int    segments;
+        private double maxPositionError;
+        private double rmsPositionError;
+        private double maxVelocityError;
+        private double maxAccelError;
+        private double maxDrift;
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        public int getSegments() {
+            return segments;
+        }
+
+        public double getMaxPositionError() {
+            return maxPositionError;
+        }
+
+        public double getRmsPositionError() {
+            return rmsPositionError;
+        }
+
+        public double getMaxVelocityError() {
+            return maxVelocityError;
+        }
+
+        public double getMaxAccelError() {
+            return maxAccelError;
+        }
+
+        /**
+         * @return
+         *         The largest difference between a forward differenced
+         *         position and the segment polynomial evaluated directly
+         */
+        public double getMaxDrift() {
+            return maxDrift;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d ticks, %d segments, position error max %.3g rms %.3g, "
+                    + "velocity error max %.3g, accel error max %.3g, drift %.3g", ticks, segments,
+                    maxPositionError, rmsPositionError, maxVelocityError, maxAccelError, maxDrift);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package spline.bezier;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of point query results, keyed on the curve version and the
+ * X value. Each entry holds t along with the position, velocity and
+ * acceleration at that t, so a position query followed by velocity and
+ * acceleration queries at the same X costs one span search and one solve.
+ * 
+ * Entries live in flat primitive arrays. An X value hashes to a set of WAYS
+ * adjacent slots, and a new entry takes a free or stale slot in the set, or
+ * else evicts one with the CLOCK algorithm: each slot has a reference bit
+ * set on every hit, and a hand sweeps the set clearing bits until it finds
+ * one that wasn't hit since its last pass.
+ * 
+ * Entries from an older version of the curve never match, so editing the
+ * curve or its solver settings invalidates the whole cache without touching
+ * it. Each version solves with the settings it was published with, so an
+ * entry stored by an older snapshot is still right for that snapshot. Each
+ * slot is guarded by a sequence number, odd while the slot is being written,
+ * so readers never see a half written entry and never block.
+ */
+public class ResultCache {
+
+    final static int                POSITION = 1;
+    final static int                VELOCITY = 2;
+    final static int                ACCEL    = 3;
+
+    private final static int        WAYS     = 4;
+    private final static int        FIELDS   = 4;
+    private final static long       EMPTY    = -1;
+
+    private final static VarHandle  STAMP    = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int               setMask;
+    private final long[]            stamps;
+    private final long[]            versions;
+    private final long[]            keys;
+    private final int[]             spans;
+    private final double[]          values;
+    private final byte[]            referenced;
+    private final byte[]            hands;
+
+    private final LongAdder         hits      = new LongAdder();
+    private final LongAdder         misses    = new LongAdder();
+    private final LongAdder         evictions = new LongAdder();
+
+    /**
+     * @param capacity
+     *            The most results to hold, rounded up to a power of two
+     */
+    ResultCache(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        int slots = Integer.highestOneBit(Math.max(capacity, WAYS) - 1) << 1;
+        int sets = slots / WAYS;
+        setMask = sets - 1;
+        stamps = new long[slots];
+        versions = new long[slots];
+        keys = new long[slots];
+        spans = new int[slots];
+        values = new double[slots * FIELDS];
+        referenced = new byte[slots];
+        hands = new byte[sets];
+        Arrays.fill(versions, EMPTY);
+    }
+
+    /**
+     * @return
+     *         The number of results the cache can hold
+     */
+    public int getCapacity() {
+        return stamps.length;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return
+     *         The number of current results pushed out to make room for new
+     *         ones
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return
+     *         The fraction of queries answered from the cache, or 0 if there
+     *         haven't been any
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Drops every entry
+     */
+    public void clear() {
+        for (int i = 0; i < stamps.length; i++) {
+            long stamp = (long) STAMP.getAcquire(stamps, i);
+            while ((stamp & 1) != 0 || !STAMP.compareAndSet(stamps, i, stamp, stamp + 1)) {
+                Thread.onSpinWait();
+                stamp = (long) STAMP.getAcquire(stamps, i);
+            }
+            versions[i] = EMPTY;
+            STAMP.setRelease(stamps, i, stamp + 2);
+        }
+    }
+
+    /**
+     * Answers a point query from the cache, or evaluates it on the curve and
+     * caches the result
+     * 
+     * @param curve
+     *            The curve being queried
+     * @param x
+     *            The X value to evaluate at
+     * @param field
+     *            POSITION, VELOCITY or ACCEL
+     * @return
+     *         The requested value at x, or ERROR if x is outside of the curve
+     */
+    double evaluate(CompiledCurve curve, double x, int field) {
+        long version = curve.getVersion();
+        long key = Double.doubleToRawLongBits(x);
+        int first = set(key) * WAYS;
+
+        for (int i = first; i < first + WAYS; i++) {
+            long stamp = (long) STAMP.getAcquire(stamps, i);
+            if ((stamp & 1) != 0 || keys[i] != key || versions[i] != version)
+                continue;
+            double value = values[i * FIELDS + field];
+            int span = spans[i];
+
+            // Make sure the entry wasn't rewritten while it was being read
+            VarHandle.loadLoadFence();
+            if ((long) STAMP.getAcquire(stamps, i) != stamp)
+                continue;
+            if (referenced[i] == 0)
+                referenced[i] = 1;
+            hits.increment();
+            curve.recordEvaluation(span);
+            return value;
+        }
+        misses.increment();
+
+        int index = curve.spanIndexContainingX(x);
+        curve.recordEvaluation(index);
+        if (index < 0)
+            return Bezier.ERROR;
+
+        Bezier.Span span = curve.getSpan(index);
+        double t = curve.tOfX(span, x, Bezier.Span.NO_GUESS);
+        double position = span.solveCubic(t, false);
+        double velocity = span.velocityAtT(t);
+        double accel = span.accelAtT(t);
+        store(first, version, key, index, t, position, velocity, accel);
+        return field == POSITION ? position : field == VELOCITY ? velocity : accel;
+    }
+
+    private int set(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & setMask;
+    }
+
+    private void store(int first, long version, long key, int span, double t, double position, double velocity,
+            double accel) {
+        int slot = victim(first, version);
+
+        // Give up rather than wait if another thread is writing this slot
+        long stamp = (long) STAMP.getAcquire(stamps, slot);
+        if ((stamp & 1) != 0 || !STAMP.compareAndSet(stamps, slot, stamp, stamp + 1))
+            return;
+        if (versions[slot] == version)
+            evictions.increment();
+        versions[slot] = version;
+        keys[slot] = key;
+        spans[slot] = span;
+        int v = slot * FIELDS;
+        values[v] = t;
+        values[v + POSITION] = position;
+        values[v + VELOCITY] = velocity;
+        values[v + ACCEL] = accel;
+        referenced[slot] = 0;
+        STAMP.setRelease(stamps, slot, stamp + 2);
+    }
+
+    /**
+     * @return
+     *         A slot in the set starting at first that is empty or holds an
+     *         older version, or else the slot the CLOCK hand stops at
+     */
+    private int victim(int first, long version) {
+        for (int i = first; i < first + WAYS; i++) {
+            if (versions[i] != version)
+                return i;
+        }
+
+        // Races on the hand and reference bits can only make a worse choice
+        // of victim, never a wrong result
+        int set = first / WAYS;
+        int hand = hands[set];
+        for (int i = 0; i < WAYS * 2; i++) {
+            int slot = first + hand;
+            hand = (hand + 1) & (WAYS - 1);
+            if (referenced[slot] == 0) {
+                hands[set] = (byte) hand;
+                return slot;
+            }
+            referenced[slot] = 0;
+        }
+        hands[set] = (byte) hand;
+        return first + hand;
+    }
+}
@@ -0,0 +1,176 @@
+package spline.bezier;
+
+/**
+ * The root finders shared by everything that inverts a monotone function of
+ * t: X to t on a span, in memory or mapped from a file, Y to t between turning
+ * points, and arc length to t.
+ */
+final class RootSolver {
+
+    final static int            ITERATION_LIMIT = 64;
+
+    // Relative size below which a leading coefficient is treated as zero
+    private final static double DEGENERATE      = 1e-12;
+
+    /**
+     * A function of t along with its derivative
+     */
+    interface Function {
+        double value(double t);
+
+        double slope(double t);
+    }
+
+    private RootSolver() {
+    }
+
+    /**
+     * Solves f(t) = target on [lo, hi], where f is monotone and reaches the
+     * target. Newton steps are taken while they stay inside a bracket around
+     * the root, otherwise the bracket is bisected, so the solve always
+     * converges.
+     *
+     * @param guess
+     *            The t to start from, which must be in [lo, hi]
+     * @param tolerance
+     *            The change in t below which the solve has converged
+     * @param rising
+     *            Whether f increases with t
+     * @param metrics
+     *            Where to count the iterations taken, or null
+     * @return
+     *         The t at which f reaches the target
+     */
+    static double newton(Function f, double target, double lo, double hi, double guess, double tolerance,
+            boolean rising, BezierMetrics metrics) {
+        double t = guess;
+        for (int i = 0; i < ITERATION_LIMIT; i++) {
+            double error = f.value(t) - target;
+            if (error == 0) {
+                if (metrics != null)
+                    metrics.recordSolve(i, true);
+                return t;
+            }
+
+            // The sign of the error tells which side of the root t is on
+            if ((error < 0) == rising)
+                lo = t;
+            else
+                hi = t;
+
+            // Newton's method, falling back to bisection when the step
+            // leaves the bracket (or the derivative vanishes)
+            double newGuess = t - error / f.slope(t);
+            if (!(newGuess > lo && newGuess < hi))
+                newGuess = (lo + hi) * 0.5;
+
+            if (Math.abs(newGuess - t) < tolerance) {
+                if (metrics != null)
+                    metrics.recordSolve(i + 1, true);
+                return newGuess;
+            }
+            t = newGuess;
+        }
+        if (metrics != null)
+            metrics.recordSolve(ITERATION_LIMIT, false);
+        return t;
+    }
+
+    /**
+     * Solves At^3 + Bt^2 + Ct + D = x for the root in [0, 1] without
+     * iterating, for a cubic that is monotone on [0, 1]. Cubics that are
+     * really quadratic or linear are solved as such.
+     *
+     * @return
+     *         The root in [0, 1], or the root nearest to it clamped to it
+     */
+    static double cubicRoot(double a, double b, double c, double d, double x) {
+        double e = d - x;
+        double scale = Math.abs(b) + Math.abs(c);
+        if (Math.abs(a) <= DEGENERATE * scale) {
+            if (Math.abs(b) <= DEGENERATE * Math.abs(c))
+                return c != 0 ? clampT(-e / c) : 0;
+
+            // Numerically stable quadratic roots
+            double discriminant = c * c - 4 * b * e;
+            if (discriminant < 0)
+                discriminant = 0;
+            double q = -0.5 * (c + Math.copySign(Math.sqrt(discriminant), c));
+            double r0 = q / b;
+            double r1 = q != 0 ? e / q : r0;
+            return closestRoot(r0, r1, r1);
+        }
+
+        // Depress the monic cubic with t = s - B / 3, leaving
+        // s^3 + ps + q = 0
+        double bn = b / a;
+        double cn = c / a;
+        double dn = e / a;
+        double shift = bn / 3;
+        double p = cn - bn * shift;
+        double q = (2 * bn * bn * bn / 27) - (bn * cn / 3) + dn;
+        double halfQ = q / 2;
+        double thirdP = p / 3;
+        double discriminant = halfQ * halfQ + thirdP * thirdP * thirdP;
+
+        if (discriminant > 0) {
+            // One real root. Take the larger cube root and find the
+            // other from their product -p / 3, avoiding cancellation.
+            double u = Math.cbrt(-halfQ - Math.copySign(Math.sqrt(discriminant), halfQ));
+            double s = u != 0 ? u - thirdP / u : 0;
+            return polish(a, b, c, d, x, clampT(s - shift));
+        }
+
+        // Three real roots, by the trigonometric method. The cubic is
+        // monotone on [0, 1], so at most one root lies inside it and the
+        // others are only needed if the first isn't that one.
+        double r = Math.sqrt(-thirdP);
+        double cosArg = r != 0 ? -halfQ / (r * r * r) : 0;
+        double phi = Math.acos(cosArg < -1 ? -1 : cosArg > 1 ? 1 : cosArg) / 3;
+        double r0 = 2 * r * Math.cos(phi) - shift;
+        if (r0 >= 0 && r0 <= 1)
+            return polish(a, b, c, d, x, r0);
+        double r1 = 2 * r * Math.cos(phi - 2 * Math.PI / 3) - shift;
+        if (r1 >= 0 && r1 <= 1)
+            return polish(a, b, c, d, x, r1);
+        double r2 = 2 * r * Math.cos(phi + 2 * Math.PI / 3) - shift;
+        return polish(a, b, c, d, x, closestRoot(r0, r1, r2));
+    }
+
+    /**
+     * Takes one Newton step from a closed form root, which recovers the
+     * digits lost to cancellation in the formulas at a fixed cost. The step
+     * is dropped if it would leave [0, 1] or the slope is zero.
+     */
+    private static double polish(double a, double b, double c, double d, double x, double t) {
+        double slope = (3 * a * t + 2 * b) * t + c;
+        if (slope == 0)
+            return t;
+        double ret = t - (((a * t + b) * t + c) * t + d - x) / slope;
+        return ret >= 0 && ret <= 1 ? ret : t;
+    }
+
+    /**
+     * @return
+     *         Whichever root is in or nearest to [0, 1], clamped to it
+     */
+    private static double closestRoot(double r0, double r1, double r2) {
+        double ret = r0;
+        double best = distanceToUnit(r0);
+        if (distanceToUnit(r1) < best) {
+            ret = r1;
+            best = distanceToUnit(r1);
+        }
+        if (distanceToUnit(r2) < best)
+            ret = r2;
+        return clampT(ret);
+    }
+
+    private static double distanceToUnit(double t) {
+        return t < 0 ? -t : t > 1 ? t - 1 : 0;
+    }
+
+    private static double clampT(double t) {
+        return t < 0 ? 0 : t > 1 ? 1 : t;
+    }
+}
@@ -0,0 +1,9 @@
+package spline.bezier;
+
+/**
+ * Receives curve samples one at a time, without boxing them into points
+ */
+public interface SampleConsumer {
+
+    void accept(double x, double y);
+}
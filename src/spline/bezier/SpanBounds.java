@@ -0,0 +1,132 @@
+package spline.bezier;
+
+import java.util.Arrays;
+
+import math.geom2d.Point2D;
+
+/**
+ * Min/max trees over the Y and velocity bounds of each span of a curve, used
+ * to find the spans that might reach a given value without visiting the rest.
+ * Finding the first candidate span after a given span walks one path down
+ * each tree, so inverse queries cost O(log n) plus the solves on the spans
+ * that are actually candidates.
+ * 
+ * Y bounds are the exact extrema of each span. Velocity bounds come from the
+ * convex hull of the span's hodograph: the derivative (X'(t), Y'(t)) is a
+ * positive combination of the differences between successive control
+ * points, so while X increases along them dy/dx stays between the least and
+ * greatest of their slopes.
+ */
+class SpanBounds {
+
+    private final Tree y;
+    private final Tree velocity;
+
+    SpanBounds(Bezier.Span[] spans) {
+        int count = spans.length;
+        double[] minY = new double[count];
+        double[] maxY = new double[count];
+        double[] minV = new double[count];
+        double[] maxV = new double[count];
+        for (int i = 0; i < count; i++) {
+            minY[i] = spans[i].getMinY();
+            maxY[i] = spans[i].getMaxY();
+            velocityBounds(spans[i], minV, maxV, i);
+        }
+        y = new Tree(minY, maxY);
+        velocity = new Tree(minV, maxV);
+    }
+
+    private static void velocityBounds(Bezier.Span span, double[] min, double[] max, int i) {
+        min[i] = Double.POSITIVE_INFINITY;
+        max[i] = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < 3; k++) {
+            Point2D p = span.getCtrlPt(k);
+            Point2D q = span.getCtrlPt(k + 1);
+            double dx = q.x() - p.x();
+            double dy = q.y() - p.y();
+            if (dx == 0 && dy == 0)
+                continue;
+
+            // A control polygon that turns back or goes vertical doesn't
+            // bound the velocity
+            if (dx <= 0) {
+                min[i] = Double.NEGATIVE_INFINITY;
+                max[i] = Double.POSITIVE_INFINITY;
+                return;
+            }
+            double slope = dy / dx;
+            min[i] = Math.min(min[i], slope);
+            max[i] = Math.max(max[i], slope);
+        }
+    }
+
+    /**
+     * @return
+     *         The first span in [from, to] that might reach the value, or -1
+     */
+    int firstReachingY(double value, int from, int to) {
+        return y.first(value, value, from, to);
+    }
+
+    /**
+     * @return
+     *         The first span in [from, to] whose velocity might exceed v, or
+     *         -1
+     */
+    int firstVelocityAbove(double v, int from, int to) {
+        return velocity.first(Math.nextUp(v), Double.POSITIVE_INFINITY, from, to);
+    }
+
+    /**
+     * A segment tree over leaf intervals [min, max], where each node holds
+     * the union of the intervals below it
+     */
+    private static class Tree {
+        private final int      leaves;
+        private final double[] min;
+        private final double[] max;
+
+        Tree(double[] leafMin, double[] leafMax) {
+            int size = 1;
+            while (size < leafMin.length)
+                size <<= 1;
+            leaves = size;
+
+            // Padding leaves hold an empty interval so they never match
+            min = new double[size * 2];
+            max = new double[size * 2];
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            System.arraycopy(leafMin, 0, min, size, leafMin.length);
+            System.arraycopy(leafMax, 0, max, size, leafMax.length);
+            for (int node = size - 1; node > 0; node--) {
+                min[node] = Math.min(min[node * 2], min[node * 2 + 1]);
+                max[node] = Math.max(max[node * 2], max[node * 2 + 1]);
+            }
+        }
+
+        /**
+         * @return
+         *         The first leaf in [from, to] whose interval meets [lo, hi],
+         *         or -1
+         */
+        int first(double lo, double hi, int from, int to) {
+            if (from > to)
+                return -1;
+            return first(1, 0, leaves - 1, lo, hi, from, to);
+        }
+
+        private int first(int node, int nodeFrom, int nodeTo, double lo, double hi, int from, int to) {
+            if (nodeTo < from || nodeFrom > to || max[node] < lo || min[node] > hi)
+                return -1;
+            if (nodeFrom == nodeTo)
+                return nodeFrom;
+            int mid = (nodeFrom + nodeTo) >>> 1;
+            int ret = first(node * 2, nodeFrom, mid, lo, hi, from, to);
+            if (ret >= 0)
+                return ret;
+            return first(node * 2 + 1, mid + 1, nodeTo, lo, hi, from, to);
+        }
+    }
+}
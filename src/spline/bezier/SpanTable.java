@@ -0,0 +1,230 @@
+package spline.bezier;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The spans of one version of a curve along with their start X values and Y
+ * extrema, stored in chunks of CHUNK spans. A table is never changed once
+ * built. Replacing a few spans makes a new table that copies the chunks
+ * holding them and shares every other chunk with the old table, so moving a
+ * control point costs O(n / CHUNK + CHUNK) rather than a copy of the whole
+ * curve.
+ * 
+ * Each chunk keeps its first start X and its Y extrema, so searching for a
+ * span and finding the curve-wide extrema only visit the chunk summaries and
+ * a single chunk.
+ */
+final class SpanTable {
+
+    private final static int      SHIFT = 10;
+    private final static int      CHUNK = 1 << SHIFT;
+    private final static int      MASK  = CHUNK - 1;
+
+    private final int             count;
+    private final Bezier.Span[][] spans;
+    private final double[][]      startX;
+
+    // Summaries of each chunk
+    private final double[]        chunkStartX;
+    private final double[]        chunkMinY;
+    private final double[]        chunkMaxY;
+
+    private final double          minY;
+    private final double          maxY;
+
+    /**
+     * @param all
+     *            The spans of the curve in order of X, which are copied
+     */
+    SpanTable(Bezier.Span[] all) {
+        count = all.length;
+        int chunks = (count + MASK) >>> SHIFT;
+        spans = new Bezier.Span[chunks][];
+        startX = new double[chunks][];
+        chunkStartX = new double[chunks];
+        chunkMinY = new double[chunks];
+        chunkMaxY = new double[chunks];
+        for (int c = 0; c < chunks; c++) {
+            int from = c << SHIFT;
+            spans[c] = Arrays.copyOfRange(all, from, Math.min(count, from + CHUNK));
+            startX[c] = new double[spans[c].length];
+            for (int i = 0; i < spans[c].length; i++) {
+                startX[c][i] = spans[c][i].getStartX();
+            }
+            summarize(c);
+        }
+        minY = min(chunkMinY);
+        maxY = max(chunkMaxY);
+    }
+
+    /**
+     * Copies base, replacing the spans from first onward with replacements
+     */
+    private SpanTable(SpanTable base, int first, Bezier.Span[] replacements) {
+        count = base.count;
+        spans = base.spans.clone();
+        startX = base.startX.clone();
+        chunkStartX = base.chunkStartX.clone();
+        chunkMinY = base.chunkMinY.clone();
+        chunkMaxY = base.chunkMaxY.clone();
+
+        int copied = -1;
+        for (int i = 0; i < replacements.length; i++) {
+            int index = first + i;
+            int c = index >>> SHIFT;
+            if (c != copied) {
+                spans[c] = spans[c].clone();
+                startX[c] = startX[c].clone();
+                copied = c;
+            }
+            spans[c][index & MASK] = replacements[i];
+            startX[c][index & MASK] = replacements[i].getStartX();
+        }
+        for (int c = first >>> SHIFT; c <= copied; c++) {
+            summarize(c);
+        }
+        minY = min(chunkMinY);
+        maxY = max(chunkMaxY);
+    }
+
+    private void summarize(int c) {
+        double lo = Double.MAX_VALUE;
+        double hi = -Double.MAX_VALUE;
+        for (Bezier.Span span : spans[c]) {
+            lo = Math.min(lo, span.getMinY());
+            hi = Math.max(hi, span.getMaxY());
+        }
+        chunkStartX[c] = startX[c][0];
+        chunkMinY[c] = lo;
+        chunkMaxY[c] = hi;
+    }
+
+    private static double min(double[] values) {
+        if (values.length == 0)
+            return 0;
+        double ret = Double.MAX_VALUE;
+        for (double v : values) {
+            ret = Math.min(ret, v);
+        }
+        return ret;
+    }
+
+    private static double max(double[] values) {
+        if (values.length == 0)
+            return 0;
+        double ret = -Double.MAX_VALUE;
+        for (double v : values) {
+            ret = Math.max(ret, v);
+        }
+        return ret;
+    }
+
+    /**
+     * @param first
+     *            The index of the first span to replace
+     * @param replacements
+     *            The new spans, replacing spans first onward
+     * @return
+     *         A new table with the spans replaced, sharing the chunks that
+     *         didn't change with this one
+     */
+    SpanTable with(int first, Bezier.Span[] replacements) {
+        return new SpanTable(this, first, replacements);
+    }
+
+    int size() {
+        return count;
+    }
+
+    Bezier.Span get(int index) {
+        return spans[index >>> SHIFT][index & MASK];
+    }
+
+    double getStartX(int index) {
+        return startX[index >>> SHIFT][index & MASK];
+    }
+
+    /**
+     * @return
+     *         The lowest Y value reached by any span, or 0 if there are none
+     */
+    double getMinY() {
+        return minY;
+    }
+
+    /**
+     * @return
+     *         The highest Y value reached by any span, or 0 if there are none
+     */
+    double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * @return
+     *         The last span starting strictly before x, or 0 if there's none
+     */
+    int indexOwning(double x) {
+        if (count == 0)
+            return 0;
+        int lo = 0;
+        int hi = chunkStartX.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (chunkStartX[mid] < x)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        int c = lo;
+        double[] starts = startX[c];
+        lo = 0;
+        hi = starts.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] < x)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return (c << SHIFT) + lo;
+    }
+
+    /**
+     * @return
+     *         A new array of every span, for structures built over the whole
+     *         curve
+     */
+    Bezier.Span[] toArray() {
+        Bezier.Span[] ret = new Bezier.Span[count];
+        for (int c = 0; c < spans.length; c++) {
+            System.arraycopy(spans[c], 0, ret, c << SHIFT, spans[c].length);
+        }
+        return ret;
+    }
+
+    /**
+     * @return
+     *         A read only list view of the spans
+     */
+    List<Bezier.Span> asList() {
+        return new SpanList();
+    }
+
+    private class SpanList extends AbstractList<Bezier.Span> implements RandomAccess {
+        @Override
+        public Bezier.Span get(int index) {
+            if (index < 0 || index >= count)
+                throw new IndexOutOfBoundsException("span " + index + " of " + count);
+            return SpanTable.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
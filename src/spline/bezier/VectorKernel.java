@@ -0,0 +1,82 @@
+package spline.bezier;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The X to t inversion of MultiCurveEvaluator written with the incubating
+ * Vector API. Each block of lanes runs the bracketed Newton solve of
+ * RootSolver.newton in lockstep, with a flag per lane for whether it's still
+ * converging standing in for the scalar loop's early returns, so every lane
+ * takes the same steps and gets the same t as the scalar solve.
+ * 
+ * This is the only class that refers to jdk.incubator.vector.
+ * MultiCurveEvaluator loads it by name, and only when that module is in the
+ * boot layer (run with --add-modules jdk.incubator.vector).
+ */
+final class VectorKernel implements MultiCurveEvaluator.Kernel {
+
+    private final static VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // The active flags of the block being solved, as 1 or 0
+    private final double[]                     flags = new double[SPECIES.length()];
+
+    public int solve(double x, double[] tolerance, int count, double[] a, double[] b, double[] c, double[] d,
+            boolean[] active, double[] t, double[] dtdx) {
+        int bound = SPECIES.loopBound(count);
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1);
+        for (int i = 0; i < bound; i += SPECIES.length()) {
+            boolean any = false;
+            for (int k = 0; k < flags.length; k++) {
+                flags[k] = active[i + k] ? 1 : 0;
+                any |= active[i + k];
+            }
+            if (!any)
+                continue;
+            DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+            DoubleVector vb = DoubleVector.fromArray(SPECIES, b, i);
+            DoubleVector vc = DoubleVector.fromArray(SPECIES, c, i);
+            DoubleVector vd = DoubleVector.fromArray(SPECIES, d, i);
+            DoubleVector tol = DoubleVector.fromArray(SPECIES, tolerance, i);
+            DoubleVector va3 = va.mul(3);
+            DoubleVector vb2 = vb.mul(2);
+            DoubleVector u = DoubleVector.fromArray(SPECIES, t, i);
+            DoubleVector lo = DoubleVector.zero(SPECIES);
+            DoubleVector hi = one;
+
+            // The lanes still converging hold 1 in pending. It's a vector
+            // rather than a mask because C2 boxes masks carried around a loop.
+            DoubleVector pending = DoubleVector.fromArray(SPECIES, flags, 0);
+            for (int iteration = 0; iteration < RootSolver.ITERATION_LIMIT; iteration++) {
+                VectorMask<Double> solving = pending.compare(VectorOperators.NE, 0);
+                if (!solving.anyTrue())
+                    break;
+                DoubleVector error = va.mul(u).add(vb).mul(u).add(vc).mul(u).add(vd).sub(x);
+                solving = solving.and(error.compare(VectorOperators.NE, 0));
+
+                // The sign of the error tells which side of the root t is on
+                VectorMask<Double> below = error.compare(VectorOperators.LT, 0);
+                lo = lo.blend(u, solving.and(below));
+                hi = hi.blend(u, solving.and(below.not()));
+
+                // Newton's method, falling back to bisection when the step
+                // leaves the bracket (or the derivative vanishes)
+                DoubleVector slope = va3.mul(u).add(vb2).mul(u).add(vc);
+                DoubleVector next = u.sub(error.div(slope));
+                VectorMask<Double> inside = next.compare(VectorOperators.GT, lo)
+                        .and(next.compare(VectorOperators.LT, hi));
+                next = next.blend(lo.add(hi).mul(0.5), inside.not());
+
+                VectorMask<Double> converged = next.sub(u).abs().compare(VectorOperators.LT, tol);
+                u = u.blend(next, solving);
+                pending = pending.blend(0, solving.not().or(converged));
+            }
+            VectorMask<Double> lanes = DoubleVector.fromArray(SPECIES, flags, 0).compare(VectorOperators.NE, 0);
+            u.intoArray(t, i, lanes);
+            one.div(va3.mul(u).add(vb2).mul(u).add(vc)).intoArray(dtdx, i, lanes);
+        }
+        return bound;
+    }
+}
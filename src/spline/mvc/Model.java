@@ -1,11 +1,29 @@
 package spline.mvc;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 public abstract class Model {
 
-    private List<spline.mvc.View> observers = new ArrayList<View>();
+    private List<spline.mvc.View> observers = new CopyOnWriteArrayList<View>();
+
+    // Changes are recorded here and delivered to the observers as a single
+    // notification, either straight away or on the notification executor
+    private final Object          notifyLock = new Object();
+    private Executor              executor;
+    private int                   changeDepth;
+    private boolean               pending;
+    private boolean               scheduled;
+    private boolean               pendingAll;
+    private int                   pendingFirst;
+    private int                   pendingLast;
+
+    private final Runnable deliverTask = new Runnable() {
+        public void run() {
+            deliver();
+        }
+    };
 
     public void registerObserver(View observer) {
         observers.add(observer);
@@ -16,9 +34,119 @@ public abstract class Model {
         observers.remove(observer);
     }
 
+    /**
+     * Sets where observers are notified. With no executor (the default) they
+     * are notified on the thread that changed the model. Otherwise
+     * notifications are handed to the executor, and changes made before it
+     * runs the last one are merged into it.
+     * 
+     * @param executor
+     *            The executor to notify observers on, such as the Swing event
+     *            thread, or null to notify on the changing thread
+     */
+    public void setNotificationExecutor(Executor executor) {
+        synchronized (notifyLock) {
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Starts a batch of changes. Notifications are held until the matching
+     * call to commitChange and then sent as one. Batches may be nested.
+     */
+    public void beginChange() {
+        synchronized (notifyLock) {
+            changeDepth++;
+        }
+    }
+
+    /**
+     * Ends a batch of changes started with beginChange, notifying observers
+     * once if anything changed during the outermost batch
+     */
+    public void commitChange() {
+        synchronized (notifyLock) {
+            if (changeDepth == 0)
+                throw new IllegalStateException("commitChange without beginChange");
+            changeDepth--;
+            if (changeDepth > 0 || !pending)
+                return;
+        }
+        dispatch();
+    }
+
     public void notifyObservers() {
+        synchronized (notifyLock) {
+            pending = true;
+            pendingAll = true;
+            if (changeDepth > 0)
+                return;
+        }
+        dispatch();
+    }
+
+    /**
+     * Notifies observers that only part of the model changed
+     * 
+     * @param first
+     *            The first changed element
+     * @param last
+     *            The last changed element, inclusive
+     */
+    public void notifyObservers(int first, int last) {
+        synchronized (notifyLock) {
+            if (!pending) {
+                pendingFirst = first;
+                pendingLast = last;
+            }
+            else {
+                pendingFirst = Math.min(pendingFirst, first);
+                pendingLast = Math.max(pendingLast, last);
+            }
+            pending = true;
+            if (changeDepth > 0)
+                return;
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        Executor target;
+        synchronized (notifyLock) {
+            target = executor;
+            if (target != null) {
+                // A queued delivery will pick up this change as well
+                if (scheduled)
+                    return;
+                scheduled = true;
+            }
+        }
+        if (target == null)
+            deliver();
+        else
+            target.execute(deliverTask);
+    }
+
+    private void deliver() {
+        boolean all;
+        int first;
+        int last;
+        synchronized (notifyLock) {
+            scheduled = false;
+            if (!pending)
+                return;
+            all = pendingAll;
+            first = pendingFirst;
+            last = pendingLast;
+            pending = false;
+            pendingAll = false;
+        }
+
         for (View o : observers) {
-            o.update();
+            if (all)
+                o.update();
+            else
+                o.update(first, last);
         }
     }
 }
@@ -28,4 +28,17 @@ public abstract class View extends JPanel {
     }
 
     public abstract void update();
+
+    /**
+     * Called when only part of the model changed. Views that can't redraw
+     * selectively may leave this as a full update.
+     * 
+     * @param first
+     *            The first changed element
+     * @param last
+     *            The last changed element, inclusive
+     */
+    public void update(int first, int last) {
+        update();
+    }
 }